@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway.indexer;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.NoSuchFileException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import org.springframework.cloud.dataflow.common.flyway.IndexedMigrationsConfigurer;
+
+/**
+ * Annotation processor writing an index of concrete {@code AbstractMigration}
+ * and {@code AbstractCallback} implementations into
+ * {@value IndexedMigrationsConfigurer#INDEX_LOCATION} so that
+ * {@link IndexedMigrationsConfigurer} can register them with Flyway without
+ * scanning a classpath.
+ * <p>
+ * An index also records whether a module has sql migrations, in which case
+ * Flyway still scans locations at runtime. Sql migrations are detected from
+ * resources with a {@code .sql} suffix in class output under locations given
+ * with a {@value #LOCATIONS_OPTION} option, defaulting to
+ * {@code db/migration}, which works when resources are copied into class
+ * output before compilation. Detection can be overridden with a
+ * {@value #SQL_OPTION} option set to {@code true} or {@code false}.
+ * <p>
+ * Classes compiled in a current compilation are merged with an existing
+ * index, so an incremental compilation of some sources keeps entries of other
+ * classes. Existing entries which no longer resolve to a class are dropped.
+ * <p>
+ * Processor is added to a compiler as an annotation processor path, in a same
+ * way as {@code spring-context-indexer}, and is not needed at runtime.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions({ MigrationIndexProcessor.SQL_OPTION, MigrationIndexProcessor.LOCATIONS_OPTION })
+public class MigrationIndexProcessor extends AbstractProcessor {
+
+	/** Option telling whether a module has sql migrations */
+	public static final String SQL_OPTION = "dataflow.migrations.sql";
+	/** Option with comma separated locations checked for sql migrations */
+	public static final String LOCATIONS_OPTION = "dataflow.migrations.locations";
+	private static final String INDEX_LOCATION = IndexedMigrationsConfigurer.INDEX_LOCATION;
+	private static final String DEFAULT_LOCATIONS = "db/migration";
+	private static final String SQL_SUFFIX = ".sql";
+	private static final String CLASSPATH_PREFIX = "classpath:";
+	private static final String MIGRATION_TYPE = "org.springframework.cloud.dataflow.common.flyway.AbstractMigration";
+	private static final String CALLBACK_TYPE = "org.springframework.cloud.dataflow.common.flyway.AbstractCallback";
+	private final Set<String> classNames = new TreeSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		TypeMirror migrationType = getErasure(MIGRATION_TYPE);
+		TypeMirror callbackType = getErasure(CALLBACK_TYPE);
+		if (migrationType == null || callbackType == null) {
+			return false;
+		}
+		for (Element element : roundEnv.getRootElements()) {
+			collect(element, migrationType, callbackType);
+		}
+		if (roundEnv.processingOver()) {
+			readIndex(migrationType, callbackType);
+			if (!classNames.isEmpty()) {
+				writeIndex();
+			}
+		}
+		return false;
+	}
+
+	private void collect(Element element, TypeMirror migrationType, TypeMirror callbackType) {
+		if (element.getKind() != ElementKind.CLASS) {
+			return;
+		}
+		TypeElement type = (TypeElement) element;
+		if (isIndexed(type, migrationType, callbackType)) {
+			classNames.add(processingEnv.getElementUtils().getBinaryName(type).toString());
+		}
+		for (Element enclosed : type.getEnclosedElements()) {
+			if (enclosed.getModifiers().contains(Modifier.STATIC)) {
+				collect(enclosed, migrationType, callbackType);
+			}
+		}
+	}
+
+	private boolean isIndexed(TypeElement type, TypeMirror migrationType, TypeMirror callbackType) {
+		Set<Modifier> modifiers = type.getModifiers();
+		TypeMirror erasure = processingEnv.getTypeUtils().erasure(type.asType());
+		return modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.ABSTRACT)
+				&& (processingEnv.getTypeUtils().isSubtype(erasure, migrationType)
+						|| processingEnv.getTypeUtils().isSubtype(erasure, callbackType));
+	}
+
+	private void readIndex(TypeMirror migrationType, TypeMirror callbackType) {
+		try {
+			FileObject resource = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					INDEX_LOCATION);
+			try (Reader reader = resource.openReader(true); BufferedReader lines = new BufferedReader(reader)) {
+				String line;
+				while ((line = lines.readLine()) != null) {
+					line = line.trim();
+					if (line.isEmpty() || line.startsWith("#") || classNames.contains(line)
+							|| IndexedMigrationsConfigurer.SQL_MIGRATIONS_ENTRY.equals(line)) {
+						continue;
+					}
+					// binary names of nested classes use a dollar sign
+					TypeElement type = processingEnv.getElementUtils().getTypeElement(line.replace('$', '.'));
+					if (type != null && isIndexed(type, migrationType, callbackType)) {
+						classNames.add(line);
+					}
+				}
+			}
+		}
+		catch (FileNotFoundException | NoSuchFileException e) {
+			// no previous index
+		}
+		catch (IOException | IllegalArgumentException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+					"Unable to read existing " + INDEX_LOCATION + ": " + e.getMessage());
+		}
+	}
+
+	private void writeIndex() {
+		try {
+			FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					INDEX_LOCATION);
+			boolean sqlMigrations = hasSqlMigrations(resource.toUri());
+			try (Writer writer = resource.openWriter()) {
+				if (sqlMigrations) {
+					writer.write(IndexedMigrationsConfigurer.SQL_MIGRATIONS_ENTRY);
+					writer.write('\n');
+				}
+				for (String className : classNames) {
+					writer.write(className);
+					writer.write('\n');
+				}
+			}
+		}
+		catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Unable to write " + INDEX_LOCATION + ": " + e.getMessage());
+		}
+	}
+
+	private boolean hasSqlMigrations(URI index) {
+		String option = processingEnv.getOptions().get(SQL_OPTION);
+		if (option != null) {
+			return Boolean.parseBoolean(option);
+		}
+		try {
+			Path output = Paths.get(index);
+			for (int i = 0; i < INDEX_LOCATION.split("/").length; i++) {
+				output = output.getParent();
+			}
+			String locations = processingEnv.getOptions().getOrDefault(LOCATIONS_OPTION, DEFAULT_LOCATIONS);
+			for (String location : locations.split(",")) {
+				location = location.trim();
+				if (location.startsWith(CLASSPATH_PREFIX)) {
+					location = location.substring(CLASSPATH_PREFIX.length());
+				}
+				Path directory = output.resolve(location);
+				if (!location.isEmpty() && Files.isDirectory(directory)) {
+					try (Stream<Path> files = Files.walk(directory)) {
+						if (files.anyMatch(file -> file.getFileName().toString().endsWith(SQL_SUFFIX))) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+		catch (IOException | RuntimeException e) {
+			// without knowing better keep runtime scanning enabled
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+					"Unable to check sql migrations, recording them as present: " + e.getMessage());
+			return true;
+		}
+	}
+
+	private TypeMirror getErasure(String className) {
+		TypeElement type = processingEnv.getElementUtils().getTypeElement(className);
+		return type != null ? processingEnv.getTypeUtils().erasure(type.asType()) : null;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway.indexer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.cloud.dataflow.common.flyway.IndexedMigrationsConfigurer;
+
+public class MigrationIndexProcessorTests {
+
+	private static final String FLYWAY_PACKAGE = "org.springframework.cloud.dataflow.common.flyway.";
+	private static final String MIGRATION = "package example;\n"
+			+ "public class V1__First extends " + FLYWAY_PACKAGE + "AbstractMigration {\n"
+			+ "  public V1__First() { super(java.util.Collections.emptyList()); }\n"
+			+ "}\n";
+	private static final String CALLBACK = "package example;\n"
+			+ "public class Holder {\n"
+			+ "  public static class Nested extends " + FLYWAY_PACKAGE + "AbstractCallback {\n"
+			+ "    public Nested() { super(org.flywaydb.core.api.callback.Event.AFTER_MIGRATE); }\n"
+			+ "  }\n"
+			+ "}\n";
+	private static final String NOT_INDEXED = "package example;\n"
+			+ "public abstract class Base extends " + FLYWAY_PACKAGE + "AbstractMigration {\n"
+			+ "  public Base() { super(java.util.Collections.emptyList()); }\n"
+			+ "}\n"
+			+ "class Hidden extends Base {\n"
+			+ "}\n";
+
+	@TempDir
+	Path directory;
+	private Path output;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		output = Files.createDirectories(directory.resolve("classes"));
+	}
+
+	@Test
+	public void indexesPublicConcreteMigrationsAndCallbacks() throws IOException {
+		compile(Collections.emptyList(), MIGRATION, CALLBACK, NOT_INDEXED);
+		assertThat(readIndex()).containsExactly("example.Holder$Nested", "example.V1__First");
+	}
+
+	@Test
+	public void writesNoIndexWithoutMigrations() throws IOException {
+		compile(Collections.emptyList(), "package example;\npublic class Plain {\n}\n");
+		assertThat(output.resolve(IndexedMigrationsConfigurer.INDEX_LOCATION)).doesNotExist();
+	}
+
+	@Test
+	public void recordsSqlMigrationsInClassOutput() throws IOException {
+		writeSql("db/migration/V2__sql.sql");
+		compile(Collections.emptyList(), MIGRATION);
+		assertThat(readIndex()).containsExactly(IndexedMigrationsConfigurer.SQL_MIGRATIONS_ENTRY, "example.V1__First");
+	}
+
+	@Test
+	public void recordsSqlMigrationsInConfiguredLocations() throws IOException {
+		writeSql("db/migration/V2__sql.sql");
+		writeSql("db/custom/V3__sql.sql");
+		compile(Arrays.asList("-A" + MigrationIndexProcessor.LOCATIONS_OPTION + "=db/other"), MIGRATION);
+		assertThat(readIndex()).containsExactly("example.V1__First");
+		compile(Arrays.asList("-A" + MigrationIndexProcessor.LOCATIONS_OPTION + "=db/other, classpath:db/custom"),
+				MIGRATION);
+		assertThat(readIndex()).containsExactly(IndexedMigrationsConfigurer.SQL_MIGRATIONS_ENTRY, "example.V1__First");
+	}
+
+	@Test
+	public void sqlOptionOverridesDetection() throws IOException {
+		compile(Arrays.asList("-A" + MigrationIndexProcessor.SQL_OPTION + "=true"), MIGRATION);
+		assertThat(readIndex()).containsExactly(IndexedMigrationsConfigurer.SQL_MIGRATIONS_ENTRY, "example.V1__First");
+		writeSql("db/migration/V2__sql.sql");
+		compile(Arrays.asList("-A" + MigrationIndexProcessor.SQL_OPTION + "=false"), MIGRATION);
+		assertThat(readIndex()).containsExactly("example.V1__First");
+	}
+
+	@Test
+	public void keepsEntriesOfEarlierCompilation() throws IOException {
+		compile(Collections.emptyList(), MIGRATION);
+		compile(Collections.emptyList(), CALLBACK);
+		assertThat(readIndex()).containsExactly("example.Holder$Nested", "example.V1__First");
+	}
+
+	private void compile(List<String> processorOptions, String... sources) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		List<File> files = new ArrayList<>();
+		for (String source : sources) {
+			String className = source.substring(source.indexOf("class ") + 6, source.indexOf(' ',
+					source.indexOf("class ") + 6));
+			Path file = directory.resolve("src/example/" + className + ".java");
+			Files.createDirectories(file.getParent());
+			Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+			files.add(file.toFile());
+		}
+		List<String> options = new ArrayList<>(Arrays.asList("-d", output.toString(), "-classpath",
+				System.getProperty("java.class.path") + File.pathSeparator + output, "-processor",
+				MigrationIndexProcessor.class.getName()));
+		options.addAll(processorOptions);
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+				StandardCharsets.UTF_8)) {
+			Boolean success = compiler.getTask(null, fileManager, diagnostics, options, null,
+					fileManager.getJavaFileObjectsFromFiles(files)).call();
+			assertThat(success).as(diagnostics.getDiagnostics().toString()).isTrue();
+		}
+	}
+
+	private void writeSql(String location) throws IOException {
+		Path file = output.resolve(location);
+		Files.createDirectories(file.getParent());
+		Files.write(file, Collections.singletonList("CREATE TABLE S (ID INT PRIMARY KEY);"), StandardCharsets.UTF_8);
+	}
+
+	private List<String> readIndex() throws IOException {
+		return Files.readAllLines(output.resolve(IndexedMigrationsConfigurer.INDEX_LOCATION),
+				StandardCharsets.UTF_8);
+	}
+}
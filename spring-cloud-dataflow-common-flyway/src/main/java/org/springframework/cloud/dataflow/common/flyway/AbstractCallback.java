@@ -22,10 +22,14 @@ import org.flywaydb.core.api.callback.Context;
 import org.flywaydb.core.api.callback.Event;
 
 import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 
 /**
  * Base implementation providing some shared features for java based callbacks.
+ * Commands are either given as a single list or as {@link DialectSqlCommands}
+ * resolved with a dialect of a Flyway data source which is detected only once
+ * per data source.
  *
  * @author Janne Valkealahti
  *
@@ -34,7 +38,8 @@ public abstract class AbstractCallback implements Callback {
 
 	private final Event event;
 	private final List<SqlCommand> commands;
-	private final SqlCommandsRunner runner = new SqlCommandsRunner();
+	private final DialectSqlCommands dialectCommands;
+	private final SqlCommandsRunner runner;
 
 	/**
 	 * Instantiates a new abstract callback.
@@ -52,8 +57,41 @@ public abstract class AbstractCallback implements Callback {
 	 * @param commands the sql commands to run
 	 */
 	public AbstractCallback(Event event, List<SqlCommand> commands) {
+		this(event, commands, new SqlCommandsRunner());
+	}
+
+	/**
+	 * Instantiates a new abstract callback.
+	 *
+	 * @param event the event to hook into
+	 * @param commands the sql commands to run
+	 * @param runner the sql commands runner
+	 */
+	public AbstractCallback(Event event, List<SqlCommand> commands, SqlCommandsRunner runner) {
+		this(event, commands, null, runner);
+	}
+
+	/**
+	 * Instantiates a new abstract callback with dialect specific commands.
+	 * Runner is given before commands so that a {@code null} list of commands
+	 * doesn't make a constructor call ambiguous.
+	 *
+	 * @param event the event to hook into
+	 * @param runner the sql commands runner
+	 * @param dialectCommands the dialect specific sql commands to run
+	 */
+	public AbstractCallback(Event event, SqlCommandsRunner runner, DialectSqlCommands dialectCommands) {
+		this(event, null, dialectCommands, runner);
+		Assert.notNull(dialectCommands, "dialectCommands must be set");
+	}
+
+	private AbstractCallback(Event event, List<SqlCommand> commands, DialectSqlCommands dialectCommands,
+			SqlCommandsRunner runner) {
+		Assert.notNull(runner, "runner must be set");
 		this.event = event;
 		this.commands = commands;
+		this.dialectCommands = dialectCommands;
+		this.runner = runner;
 	}
 
 	@Override
@@ -63,13 +101,14 @@ public abstract class AbstractCallback implements Callback {
 
 	@Override
 	public boolean canHandleInTransaction(Event event, Context context) {
-		return true;
+		return SqlCommandsRunner.canExecuteInTransaction(getCommands(event, context));
 	}
 
 	@Override
 	public void handle(Event event, Context context) {
 		try {
-			runner.execute(context.getConnection(), getCommands(event, context));
+			runner.execute(getClass().getName() + ":" + event, context.getConnection(),
+					getCommands(event, context));
 		}
 		catch(Exception sqe) {
 			if (sqe instanceof BadSqlGrammarException) {
@@ -92,6 +131,19 @@ public abstract class AbstractCallback implements Callback {
 	 * @return the commands
 	 */
 	public List<SqlCommand> getCommands(Event event, Context context) {
+		if (dialectCommands != null) {
+			return dialectCommands.getCommands(
+					SqlDialect.fromDataSource(context.getConfiguration().getDataSource(), context.getConnection()));
+		}
 		return commands;
 	}
+
+	/**
+	 * Gets the event this callback hooks into.
+	 *
+	 * @return the event
+	 */
+	public Event getEvent() {
+		return event;
+	}
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Base class for a {@link SqlCommand} processing a table in chunks of numeric
+ * primary key ranges. Command reports itself as not executable in a
+ * transaction, thus with an auto-commit connection every chunk is committed on
+ * its own and locks are released between chunks.
+ */
+public abstract class AbstractChunkedSqlCommand extends SqlCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstractChunkedSqlCommand.class);
+	private final String tableName;
+	private final String keyColumn;
+	private final String whereClause;
+	private final long chunkSize;
+
+	/**
+	 * Instantiates a new chunked sql command.
+	 *
+	 * @param command the command describing a whole operation
+	 * @param tableName the table name
+	 * @param keyColumn the numeric key column
+	 * @param whereClause the additional where clause, may be {@code null}
+	 * @param chunkSize the size of a key range in a chunk
+	 */
+	protected AbstractChunkedSqlCommand(String command, String tableName, String keyColumn, String whereClause,
+			long chunkSize) {
+		super(command, null);
+		Assert.hasText(tableName, "tableName must be set");
+		Assert.hasText(keyColumn, "keyColumn must be set");
+		Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+		this.tableName = tableName;
+		this.keyColumn = keyColumn;
+		this.whereClause = whereClause;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Gets the table name.
+	 *
+	 * @return the table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Gets the key column.
+	 *
+	 * @return the key column
+	 */
+	public String getKeyColumn() {
+		return keyColumn;
+	}
+
+	/**
+	 * Gets the additional where clause.
+	 *
+	 * @return the where clause, {@code null} if not set
+	 */
+	public String getWhereClause() {
+		return whereClause;
+	}
+
+	/**
+	 * Gets the chunk size.
+	 *
+	 * @return the chunk size
+	 */
+	public long getChunkSize() {
+		return chunkSize;
+	}
+
+	@Override
+	public boolean canExecuteInTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean canHandleInJdbcTemplate() {
+		return true;
+	}
+
+	@Override
+	public void handle(JdbcTemplate jdbcTemplate, Connection connection) {
+		handle(jdbcTemplate, connection, null, null);
+	}
+
+	/**
+	 * Handle command in a given jdbc template starting from a given key and
+	 * notifying a listener about a start of a next chunk after a chunk has
+	 * been completed.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param connection the sql connection
+	 * @param resumeFrom the key to resume from, {@code null} to start from a beginning
+	 * @param chunkListener the listener for completed chunks, may be {@code null}
+	 */
+	public void handle(JdbcTemplate jdbcTemplate, Connection connection, Long resumeFrom,
+			LongConsumer chunkListener) {
+		long[] range = jdbcTemplate.query("SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + tableName
+				+ (StringUtils.hasText(whereClause) ? " WHERE " + whereClause : ""), rs -> {
+					rs.next();
+					long min = rs.getLong(1);
+					return rs.wasNull() ? null : new long[] { min, rs.getLong(2) };
+				});
+		if (range == null) {
+			logger.debug("No rows to process in {}", tableName);
+			return;
+		}
+		if (!isAutoCommit(connection)) {
+			logger.warn("Processing {} in chunks within a transaction, locks are held until it completes",
+					tableName);
+		}
+		long start = System.nanoTime();
+		long total = 0;
+		long from = range[0];
+		if (resumeFrom != null && resumeFrom > from) {
+			logger.info("Resuming processing of {} from key {}", tableName, resumeFrom);
+			from = resumeFrom;
+		}
+		while (from <= range[1]) {
+			long to = from + chunkSize;
+			// guard against overflow with keys close to a max value
+			to = to < from ? Long.MAX_VALUE : to;
+			total += handleChunk(jdbcTemplate, connection, from, to);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Processed {} chunk [{}, {}), {} rows at {} rows/s", tableName, from, to, total,
+						rate(total, start));
+			}
+			if (to == Long.MAX_VALUE) {
+				break;
+			}
+			if (chunkListener != null) {
+				chunkListener.accept(to);
+			}
+			from = to;
+		}
+		logger.info("Processed {} rows in {} at {} rows/s", total, tableName, rate(total, start));
+	}
+
+	/**
+	 * Handle a single chunk of a key range.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param connection the sql connection
+	 * @param from the inclusive start of a key range
+	 * @param to the exclusive end of a key range
+	 * @return the number of processed rows
+	 */
+	protected abstract int handleChunk(JdbcTemplate jdbcTemplate, Connection connection, long from, long to);
+
+	/**
+	 * Gets a where clause matching a key range of a chunk with two parameters
+	 * and possible additional where clause.
+	 *
+	 * @return the chunk where clause
+	 */
+	protected String getChunkWhereClause() {
+		return keyColumn + " >= ? AND " + keyColumn + " < ?"
+				+ (StringUtils.hasText(whereClause) ? " AND (" + whereClause + ")" : "");
+	}
+
+	private static long rate(long rows, long startNanos) {
+		long elapsed = System.nanoTime() - startNanos;
+		return elapsed > 0 ? rows * 1000000000L / elapsed : rows;
+	}
+
+	private static boolean isAutoCommit(Connection connection) {
+		try {
+			return connection.getAutoCommit();
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+}
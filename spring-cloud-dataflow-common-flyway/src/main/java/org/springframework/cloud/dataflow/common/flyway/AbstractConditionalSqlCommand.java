@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import org.springframework.util.Assert;
+
+/**
+ * Base class for a {@link SqlCommand} which is skipped by a
+ * {@link SqlCommandsRunner} if its change is already present in a database
+ * according to a {@link DatabaseMetaDataSnapshot}. This avoids executing a
+ * statement only to suppress its error.
+ */
+public abstract class AbstractConditionalSqlCommand extends SqlCommand {
+
+	private final String tableName;
+
+	/**
+	 * Instantiates a new conditional sql command.
+	 *
+	 * @param tableName the table name the command changes
+	 * @param command the command
+	 */
+	protected AbstractConditionalSqlCommand(String tableName, String command) {
+		super(command, null);
+		Assert.hasText(tableName, "tableName must be set");
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Gets the table name.
+	 *
+	 * @return the table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Checks if a change made by this command is already present.
+	 *
+	 * @param snapshot the database metadata snapshot
+	 * @return true, if change is present and command can be skipped
+	 */
+	public abstract boolean isPresent(DatabaseMetaDataSnapshot snapshot);
+}
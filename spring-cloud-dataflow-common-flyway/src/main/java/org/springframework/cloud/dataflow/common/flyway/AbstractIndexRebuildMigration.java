@@ -0,0 +1,376 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Base implementation for java based migrations loading or rewriting large
+ * amounts of data into a table. Non-unique secondary indexes of a table are
+ * captured from {@link DatabaseMetaData} and dropped before commands are
+ * executed and recreated afterwards. Primary key and unique indexes are kept
+ * as those back constraints, and so are indexes whose leading columns are
+ * columns of a foreign key. Indexes which can't be described by plain
+ * columns, like function based indexes and partial indexes with a filter
+ * condition, are kept as well.
+ * <p>
+ * With more than one worker indexes are recreated in parallel, each using
+ * its own connection from a Flyway {@link DataSource}, in which case a
+ * migration is not executed in a transaction. If commands fail, dropped
+ * indexes are recreated before an error is rethrown. Recreating every index
+ * is attempted even if some fail, and indexes which couldn't be recreated
+ * are logged with their DDL before a migration fails.
+ */
+public abstract class AbstractIndexRebuildMigration extends AbstractMigration {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstractIndexRebuildMigration.class);
+	private final String tableName;
+	private int workers = 1;
+
+	/**
+	 * Instantiates a new abstract index rebuild migration.
+	 *
+	 * @param tableName the table name
+	 * @param commands the commands
+	 */
+	public AbstractIndexRebuildMigration(String tableName, List<SqlCommand> commands) {
+		this(tableName, commands, new SqlCommandsRunner());
+	}
+
+	/**
+	 * Instantiates a new abstract index rebuild migration.
+	 *
+	 * @param tableName the table name
+	 * @param commands the commands
+	 * @param runner the sql commands runner
+	 */
+	public AbstractIndexRebuildMigration(String tableName, List<SqlCommand> commands, SqlCommandsRunner runner) {
+		super(commands, runner);
+		Assert.hasText(tableName, "tableName must be set");
+		this.tableName = tableName;
+	}
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		SqlDialect dialect = SqlDialect.fromDataSource(context.getConfiguration().getDataSource(), connection);
+		List<IndexDefinition> indexes = getSecondaryIndexes(connection);
+		logger.info("Dropping {} secondary indexes of {}", indexes.size(), tableName);
+		List<IndexDefinition> dropped = new ArrayList<>();
+		boolean success = false;
+		try {
+			for (IndexDefinition index : indexes) {
+				execute(connection, index.getDropCommand(dialect, tableName));
+				dropped.add(index);
+			}
+			super.migrate(context);
+			success = true;
+		}
+		finally {
+			if (success) {
+				recreate(context.getConfiguration().getDataSource(), connection, dropped);
+			}
+			else {
+				restore(connection, dropped);
+			}
+		}
+	}
+
+	@Override
+	public boolean canExecuteInTransaction() {
+		return workers <= 1 && super.canExecuteInTransaction();
+	}
+
+	/**
+	 * Sets the number of workers recreating indexes.
+	 *
+	 * @param workers the number of workers
+	 */
+	protected void setWorkers(int workers) {
+		Assert.isTrue(workers > 0, "workers must be positive");
+		this.workers = workers;
+	}
+
+	/**
+	 * Gets the table name.
+	 *
+	 * @return the table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	private void recreate(DataSource dataSource, Connection connection, List<IndexDefinition> indexes)
+			throws Exception {
+		long start = System.nanoTime();
+		Map<IndexDefinition, Exception> failures = new LinkedHashMap<>();
+		if (workers > 1 && indexes.size() > 1 && dataSource != null && connection.getAutoCommit()) {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, indexes.size()));
+			try {
+				Map<IndexDefinition, Future<?>> futures = new LinkedHashMap<>();
+				for (IndexDefinition index : indexes) {
+					futures.put(index, executor.submit(() -> {
+						try (Connection workerConnection = dataSource.getConnection()) {
+							execute(workerConnection, index.getCreateCommand(tableName));
+						}
+						return null;
+					}));
+				}
+				for (Map.Entry<IndexDefinition, Future<?>> future : futures.entrySet()) {
+					try {
+						future.getValue().get();
+					}
+					catch (ExecutionException e) {
+						failures.put(future.getKey(), e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						failures.put(future.getKey(), e);
+					}
+				}
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		else {
+			for (IndexDefinition index : indexes) {
+				try {
+					execute(connection, index.getCreateCommand(tableName));
+				}
+				catch (SQLException | RuntimeException e) {
+					failures.put(index, e);
+				}
+			}
+		}
+		if (!failures.isEmpty()) {
+			DataFlowSchemaMigrationException exception = null;
+			for (Map.Entry<IndexDefinition, Exception> failure : failures.entrySet()) {
+				logger.error("Unable to recreate index of {}, recreate it with '{}'", tableName,
+						failure.getKey().getCreateCommand(tableName), failure.getValue());
+				if (exception == null) {
+					exception = new DataFlowSchemaMigrationException("Unable to recreate " + failures.size() + " of "
+							+ indexes.size() + " secondary indexes of " + tableName, failure.getValue());
+				}
+				else {
+					exception.addSuppressed(failure.getValue());
+				}
+			}
+			throw exception;
+		}
+		logger.info("Recreated {} secondary indexes of {} in {} ms", indexes.size(), tableName,
+				(System.nanoTime() - start) / 1000000L);
+	}
+
+	private void restore(Connection connection, List<IndexDefinition> indexes) {
+		for (IndexDefinition index : indexes) {
+			String command = index.getCreateCommand(tableName);
+			try {
+				execute(connection, command);
+			}
+			catch (SQLException e) {
+				// transactional ddl is restored by a rollback, otherwise needs manual action
+				logger.error("Unable to restore index of {}, recreate it with '{}'", tableName, command, e);
+			}
+		}
+	}
+
+	private List<IndexDefinition> getSecondaryIndexes(Connection connection) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		String name = tableName;
+		if (metaData.storesUpperCaseIdentifiers()) {
+			name = tableName.toUpperCase(Locale.ROOT);
+		}
+		else if (metaData.storesLowerCaseIdentifiers()) {
+			name = tableName.toLowerCase(Locale.ROOT);
+		}
+		String catalog = connection.getCatalog();
+		String schema = getSchema(connection);
+		Set<String> primaryKeys = new HashSet<>();
+		try (ResultSet rs = metaData.getPrimaryKeys(catalog, schema, name)) {
+			while (rs.next()) {
+				String pkName = rs.getString("PK_NAME");
+				if (pkName != null) {
+					primaryKeys.add(pkName.toUpperCase(Locale.ROOT));
+				}
+			}
+		}
+		Map<String, IndexDefinition> indexes = new LinkedHashMap<>();
+		Set<String> unsupported = new HashSet<>();
+		// approximate as some drivers would otherwise gather statistics
+		try (ResultSet rs = metaData.getIndexInfo(catalog, schema, name, false, true)) {
+			while (rs.next()) {
+				String index = rs.getString("INDEX_NAME");
+				if (index == null || rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic
+						|| !rs.getBoolean("NON_UNIQUE") || primaryKeys.contains(index.toUpperCase(Locale.ROOT))) {
+					continue;
+				}
+				String column = rs.getString("COLUMN_NAME");
+				if (!StringUtils.hasText(column) || column.indexOf('(') >= 0
+						|| StringUtils.hasText(rs.getString("FILTER_CONDITION"))) {
+					unsupported.add(index);
+					continue;
+				}
+				indexes.computeIfAbsent(index, IndexDefinition::new).addColumn(rs.getShort("ORDINAL_POSITION"),
+						column, "D".equals(rs.getString("ASC_OR_DESC")));
+			}
+		}
+		for (String index : unsupported) {
+			logger.info("Keeping index {} of {} as it can't be recreated from metadata", index, tableName);
+			indexes.remove(index);
+		}
+		List<List<String>> foreignKeys = getForeignKeyColumns(metaData, catalog, schema, name);
+		indexes.values().removeIf(index -> {
+			if (index.backsForeignKey(foreignKeys)) {
+				logger.info("Keeping index {} of {} as it backs a foreign key", index.name, tableName);
+				return true;
+			}
+			return false;
+		});
+		return new ArrayList<>(indexes.values());
+	}
+
+	/**
+	 * Gets column lists of foreign keys referencing other tables and of foreign
+	 * keys of other tables referencing this table, as some databases, e.g.
+	 * MySQL, refuse to drop an index used by either.
+	 */
+	private static List<List<String>> getForeignKeyColumns(DatabaseMetaData metaData, String catalog,
+			String schema, String name) throws SQLException {
+		Map<String, Map<Short, String>> keys = new LinkedHashMap<>();
+		try (ResultSet rs = metaData.getImportedKeys(catalog, schema, name)) {
+			while (rs.next()) {
+				keys.computeIfAbsent("I:" + rs.getString("FK_NAME") + ":" + rs.getString("PKTABLE_NAME"),
+						k -> new TreeMap<>()).put(rs.getShort("KEY_SEQ"), rs.getString("FKCOLUMN_NAME"));
+			}
+		}
+		try (ResultSet rs = metaData.getExportedKeys(catalog, schema, name)) {
+			while (rs.next()) {
+				keys.computeIfAbsent("E:" + rs.getString("FK_NAME") + ":" + rs.getString("FKTABLE_NAME"),
+						k -> new TreeMap<>()).put(rs.getShort("KEY_SEQ"), rs.getString("PKCOLUMN_NAME"));
+			}
+		}
+		List<List<String>> foreignKeys = new ArrayList<>();
+		for (Map<Short, String> columns : keys.values()) {
+			foreignKeys.add(new ArrayList<>(columns.values()));
+		}
+		return foreignKeys;
+	}
+
+	private static void execute(Connection connection, String command) throws SQLException {
+		logger.debug("Executing command {}", command);
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(command);
+		}
+		finally {
+			JdbcUtils.closeStatement(statement);
+		}
+	}
+
+	private static String getSchema(Connection connection) {
+		try {
+			return connection.getSchema();
+		}
+		catch (SQLException | AbstractMethodError e) {
+			// older drivers don't implement jdbc 4.1
+			return null;
+		}
+	}
+
+	private static class IndexDefinition {
+
+		private final String name;
+		private final Map<Short, String> columns = new TreeMap<>();
+		private final Map<Short, Boolean> descending = new TreeMap<>();
+
+		IndexDefinition(String name) {
+			this.name = name;
+		}
+
+		void addColumn(short position, String column, boolean desc) {
+			columns.put(position, column);
+			descending.put(position, desc);
+		}
+
+		boolean backsForeignKey(List<List<String>> foreignKeys) {
+			List<String> indexColumns = new ArrayList<>(columns.values());
+			for (List<String> foreignKey : foreignKeys) {
+				if (foreignKey.isEmpty() || foreignKey.size() > indexColumns.size()) {
+					continue;
+				}
+				Set<String> leading = new HashSet<>();
+				for (String column : indexColumns.subList(0, foreignKey.size())) {
+					leading.add(column.toUpperCase(Locale.ROOT));
+				}
+				boolean covered = true;
+				for (String column : foreignKey) {
+					covered &= column != null && leading.contains(column.toUpperCase(Locale.ROOT));
+				}
+				if (covered) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		String getCreateCommand(String tableName) {
+			List<String> definitions = new ArrayList<>();
+			for (Map.Entry<Short, String> column : columns.entrySet()) {
+				definitions.add(descending.get(column.getKey()) ? column.getValue() + " DESC" : column.getValue());
+			}
+			return "CREATE INDEX " + name + " ON " + tableName + " ("
+					+ StringUtils.collectionToDelimitedString(definitions, ", ") + ")";
+		}
+
+		String getDropCommand(SqlDialect dialect, String tableName) {
+			switch (dialect) {
+				case MYSQL:
+				case MARIADB:
+				case SQLSERVER:
+					return "DROP INDEX " + name + " ON " + tableName;
+				default:
+					return "DROP INDEX " + name;
+			}
+		}
+	}
+}
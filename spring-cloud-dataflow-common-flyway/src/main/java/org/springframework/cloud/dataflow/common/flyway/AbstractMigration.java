@@ -20,8 +20,12 @@ import java.util.List;
 import org.flywaydb.core.api.migration.BaseJavaMigration;
 import org.flywaydb.core.api.migration.Context;
 
+import org.springframework.util.Assert;
+
 /**
  * Base implementation providing some shared features for java based migrations.
+ * Commands are either given as a single list or as {@link DialectSqlCommands}
+ * resolved with a dialect of a Flyway data source.
  *
  * @author Janne Valkealahti
  *
@@ -29,7 +33,8 @@ import org.flywaydb.core.api.migration.Context;
 public abstract class AbstractMigration extends BaseJavaMigration {
 
 	private final List<SqlCommand> commands;
-	private final SqlCommandsRunner runner = new SqlCommandsRunner();
+	private final DialectSqlCommands dialectCommands;
+	private final SqlCommandsRunner runner;
 
 	/**
 	 * Instantiates a new abstract migration.
@@ -37,13 +42,66 @@ public abstract class AbstractMigration extends BaseJavaMigration {
 	 * @param commands the commands
 	 */
 	public AbstractMigration(List<SqlCommand> commands) {
+		this(commands, new SqlCommandsRunner());
+	}
+
+	/**
+	 * Instantiates a new abstract migration.
+	 *
+	 * @param commands the commands
+	 * @param runner the sql commands runner
+	 */
+	public AbstractMigration(List<SqlCommand> commands, SqlCommandsRunner runner) {
+		this(commands, null, runner);
+	}
+
+	/**
+	 * Instantiates a new abstract migration with dialect specific commands.
+	 * Runner is given before commands so that a {@code null} list of commands
+	 * doesn't make a constructor call ambiguous.
+	 *
+	 * @param runner the sql commands runner
+	 * @param dialectCommands the dialect specific commands
+	 */
+	public AbstractMigration(SqlCommandsRunner runner, DialectSqlCommands dialectCommands) {
+		this(null, dialectCommands, runner);
+		Assert.notNull(dialectCommands, "dialectCommands must be set");
+	}
+
+	private AbstractMigration(List<SqlCommand> commands, DialectSqlCommands dialectCommands,
+			SqlCommandsRunner runner) {
 		super();
+		Assert.notNull(runner, "runner must be set");
 		this.commands = commands;
+		this.dialectCommands = dialectCommands;
+		this.runner = runner;
 	}
 
 	@Override
 	public void migrate(Context context) throws Exception {
-		runner.execute(context.getConnection(), getCommands());
+		List<SqlCommand> migrationCommands = getCommands();
+		if (dialectCommands != null) {
+			migrationCommands = getCommands(SqlDialect.fromDataSource(context.getConfiguration().getDataSource(),
+					context.getConnection()));
+		}
+		runner.execute(getClass().getName(), context.getConnection(), migrationCommands);
+	}
+
+	@Override
+	public boolean canExecuteInTransaction() {
+		if (dialectCommands != null) {
+			return dialectCommands.canExecuteInTransaction();
+		}
+		return SqlCommandsRunner.canExecuteInTransaction(getCommands());
+	}
+
+	/**
+	 * Gets the sql commands runner.
+	 *
+	 * @return the sql commands runner
+	 */
+	protected SqlCommandsRunner getRunner() {
+		return runner;
 	}
 
 	/**
@@ -54,4 +112,14 @@ public abstract class AbstractMigration extends BaseJavaMigration {
 	public List<SqlCommand> getCommands() {
 		return commands;
 	}
+
+	/**
+	 * Gets the commands for a dialect.
+	 *
+	 * @param dialect the sql dialect
+	 * @return the commands
+	 */
+	public List<SqlCommand> getCommands(SqlDialect dialect) {
+		return dialectCommands != null ? dialectCommands.getCommands(dialect) : getCommands();
+	}
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+
+import org.flywaydb.core.api.migration.Context;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Base implementation for java based migrations streaming their commands
+ * from a sql script resource instead of keeping those in memory.
+ */
+public abstract class AbstractScriptMigration extends AbstractMigration {
+
+	private final Resource script;
+
+	/**
+	 * Instantiates a new abstract script migration.
+	 *
+	 * @param script the sql script resource
+	 */
+	public AbstractScriptMigration(Resource script) {
+		this(script, new SqlCommandsRunner());
+	}
+
+	/**
+	 * Instantiates a new abstract script migration.
+	 *
+	 * @param script the sql script resource
+	 * @param runner the sql commands runner
+	 */
+	public AbstractScriptMigration(Resource script, SqlCommandsRunner runner) {
+		super(null, runner);
+		Assert.notNull(script, "script must be set");
+		this.script = script;
+	}
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		try (SqlScriptTokenizer commands = SqlScriptTokenizer.from(script, SqlDialect.fromConnection(connection))) {
+			getRunner().execute(getClass().getName(), connection, commands);
+		}
+	}
+
+	/**
+	 * Gets the sql script resource.
+	 *
+	 * @return the sql script resource
+	 */
+	public Resource getScript() {
+		return script;
+	}
+}
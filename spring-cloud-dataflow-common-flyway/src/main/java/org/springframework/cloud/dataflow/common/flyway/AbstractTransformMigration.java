@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.util.Assert;
+
+/**
+ * Base implementation for java based migrations transforming rows of a table
+ * with java code. Rows are read in pages of a batch size ordered by a unique
+ * numeric key, passed through {@link #transform(ResultSet)} and written back
+ * with batched prepared updates. Every page starts after a last key of a
+ * previous page, so no cursor is kept open while a batch is written or
+ * committed and reading doesn't rely on a driver streaming a result set.
+ * <p>
+ * With more than one worker a key range of a table is split between workers,
+ * each using its own connection from a Flyway {@link DataSource} and
+ * committing after every batch. In that case a migration is not executed in a
+ * transaction.
+ */
+public abstract class AbstractTransformMigration extends AbstractMigration {
+
+	private static final Logger logger = LoggerFactory.getLogger(AbstractTransformMigration.class);
+	private final String tableName;
+	private final String keyColumn;
+	private final String selectColumns;
+	private final String updateSql;
+	private int fetchSize = 1000;
+	private int batchSize = 500;
+	private int workers = 1;
+
+	/**
+	 * Instantiates a new abstract transform migration.
+	 *
+	 * @param tableName the table name
+	 * @param keyColumn the unique numeric key column
+	 * @param selectColumns the comma delimited columns passed to a transform
+	 * @param updateSql the update sql taking parameters returned from a transform
+	 */
+	public AbstractTransformMigration(String tableName, String keyColumn, String selectColumns, String updateSql) {
+		super(null);
+		Assert.hasText(tableName, "tableName must be set");
+		Assert.hasText(keyColumn, "keyColumn must be set");
+		Assert.hasText(selectColumns, "selectColumns must be set");
+		Assert.hasText(updateSql, "updateSql must be set");
+		this.tableName = tableName;
+		this.keyColumn = keyColumn;
+		this.selectColumns = selectColumns;
+		this.updateSql = updateSql;
+	}
+
+	/**
+	 * Transform a current row of a result set into parameters of an update
+	 * sql.
+	 *
+	 * @param rs the result set positioned at a row
+	 * @return the update parameters, {@code null} to skip a row
+	 * @throws SQLException if reading a row fails
+	 */
+	protected abstract Object[] transform(ResultSet rs) throws SQLException;
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		if (getCommands() != null) {
+			super.migrate(context);
+		}
+		long start = System.nanoTime();
+		long rows;
+		if (workers > 1) {
+			rows = transformParallel(context.getConfiguration().getDataSource(), context.getConnection());
+		}
+		else {
+			long[] range = keyRange(context.getConnection());
+			rows = range != null ? transformRange(context.getConnection(), range[0], null, false) : 0;
+		}
+		long elapsed = System.nanoTime() - start;
+		logger.info("Transformed {} rows in {} at {} rows/s", rows, tableName,
+				elapsed > 0 ? rows * 1000000000L / elapsed : rows);
+	}
+
+	@Override
+	public boolean canExecuteInTransaction() {
+		return workers <= 1 && super.canExecuteInTransaction();
+	}
+
+	/**
+	 * Sets the fetch size of a reading cursor, capped by a batch size.
+	 *
+	 * @param fetchSize the fetch size
+	 */
+	protected void setFetchSize(int fetchSize) {
+		Assert.isTrue(fetchSize > 0, "fetchSize must be positive");
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Sets the number of rows read in a page and written in a batch.
+	 *
+	 * @param batchSize the batch size
+	 */
+	protected void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the number of workers splitting a key range of a table.
+	 *
+	 * @param workers the number of workers
+	 */
+	protected void setWorkers(int workers) {
+		Assert.isTrue(workers > 0, "workers must be positive");
+		this.workers = workers;
+	}
+
+	/**
+	 * Gets the table name.
+	 *
+	 * @return the table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	private long transformParallel(DataSource dataSource, Connection connection) throws Exception {
+		Assert.notNull(dataSource, "Parallel transform needs a Flyway DataSource");
+		long[] range = keyRange(connection);
+		if (range == null) {
+			return 0;
+		}
+		// split into equal ranges with a last one ending after a max key
+		long span = Math.max(1, (range[1] - range[0]) / workers + 1);
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			List<Future<Long>> futures = new ArrayList<>();
+			for (int i = 0; i < workers; i++) {
+				long from = range[0] + i * span;
+				long to = i == workers - 1 ? range[1] + 1 : from + span;
+				if (from > range[1]) {
+					break;
+				}
+				futures.add(executor.submit(() -> {
+					try (Connection workerConnection = dataSource.getConnection()) {
+						workerConnection.setAutoCommit(false);
+						return transformRange(workerConnection, from, to, true);
+					}
+				}));
+			}
+			long rows = 0;
+			for (Future<Long> future : futures) {
+				try {
+					rows += future.get();
+				}
+				catch (ExecutionException e) {
+					executor.shutdownNow();
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+			return rows;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private long[] keyRange(Connection connection) throws SQLException {
+		try (PreparedStatement ps = connection
+				.prepareStatement("SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + tableName);
+				ResultSet rs = ps.executeQuery()) {
+			rs.next();
+			long min = rs.getLong(1);
+			return rs.wasNull() ? null : new long[] { min, rs.getLong(2) };
+		}
+	}
+
+	private long transformRange(Connection connection, long from, Long to, boolean commit) throws SQLException {
+		String sql = "SELECT " + keyColumn + ", " + selectColumns + " FROM " + tableName + " WHERE " + keyColumn
+				+ " >= ?" + (to != null ? " AND " + keyColumn + " < ?" : "") + " ORDER BY " + keyColumn;
+		long rows = 0;
+		long next = from;
+		List<Object[]> page = new ArrayList<>(batchSize);
+		try (PreparedStatement select = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY); PreparedStatement update = connection.prepareStatement(updateSql)) {
+			select.setFetchSize(Math.min(fetchSize, batchSize));
+			select.setMaxRows(batchSize);
+			while (true) {
+				select.setLong(1, next);
+				if (to != null) {
+					select.setLong(2, to);
+				}
+				int read = 0;
+				long lastKey = next;
+				// page is read fully and its cursor closed before writing
+				try (ResultSet rs = select.executeQuery()) {
+					while (rs.next()) {
+						read++;
+						lastKey = rs.getLong(1);
+						Object[] args = transform(rs);
+						if (args != null) {
+							page.add(args);
+						}
+					}
+				}
+				if (!page.isEmpty()) {
+					for (Object[] args : page) {
+						new ArgumentPreparedStatementSetter(args).setValues(update);
+						update.addBatch();
+					}
+					update.executeBatch();
+					rows += page.size();
+					page.clear();
+				}
+				if (commit) {
+					connection.commit();
+				}
+				if (read < batchSize || lastKey == Long.MAX_VALUE) {
+					break;
+				}
+				next = lastKey + 1;
+			}
+		}
+		catch (SQLException e) {
+			if (commit) {
+				connection.rollback();
+			}
+			throw e;
+		}
+		return rows;
+	}
+}
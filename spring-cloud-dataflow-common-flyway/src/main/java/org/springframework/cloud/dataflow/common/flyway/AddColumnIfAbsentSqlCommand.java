@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import org.springframework.util.Assert;
+
+/**
+ * Command adding a column to a table if it doesn't exist.
+ */
+public class AddColumnIfAbsentSqlCommand extends AbstractConditionalSqlCommand {
+
+	private final String columnName;
+
+	/**
+	 * Instantiates a new add column if absent sql command.
+	 *
+	 * @param tableName the table name
+	 * @param columnName the column name
+	 * @param command the alter table command adding a column
+	 */
+	public AddColumnIfAbsentSqlCommand(String tableName, String columnName, String command) {
+		super(tableName, command);
+		Assert.hasText(columnName, "columnName must be set");
+		this.columnName = columnName;
+	}
+
+	/**
+	 * Gets the column name.
+	 *
+	 * @return the column name
+	 */
+	public String getColumnName() {
+		return columnName;
+	}
+
+	@Override
+	public boolean isPresent(DatabaseMetaDataSnapshot snapshot) {
+		return snapshot.hasColumn(getTableName(), columnName);
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Runs migrations on a dedicated {@link Executor} so that an application
+ * startup isn't blocked by those. Readiness gate completes when migrations
+ * have been applied after which {@link DeferredSqlCommands}, i.e. index builds
+ * and statistics refreshes, are executed while an application is already
+ * serving requests. Deferred commands left by a previous run which stopped
+ * before executing those are executed as well.
+ * <p>
+ * Runners used by migrations and callbacks need to be configured with the
+ * same {@link DeferredSqlCommands} instance for commands to get deferred.
+ */
+public class BackgroundMigrationRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(BackgroundMigrationRunner.class);
+	private final Executor executor;
+	private final DataSource dataSource;
+	private final DeferredSqlCommands deferredCommands;
+	private final SqlCommandsRunner runner;
+	private final CompletableFuture<Void> ready = new CompletableFuture<>();
+	private final CompletableFuture<Void> completed = new CompletableFuture<>();
+
+	/**
+	 * Instantiates a new background migration runner.
+	 *
+	 * @param executor the executor running migrations
+	 * @param dataSource the data source used to execute deferred commands
+	 * @param deferredCommands the deferred commands
+	 */
+	public BackgroundMigrationRunner(Executor executor, DataSource dataSource, DeferredSqlCommands deferredCommands) {
+		this(executor, dataSource, deferredCommands, new SqlCommandsRunner());
+	}
+
+	/**
+	 * Instantiates a new background migration runner.
+	 *
+	 * @param executor the executor running migrations
+	 * @param dataSource the data source used to execute deferred commands
+	 * @param deferredCommands the deferred commands
+	 * @param runner the sql commands runner executing deferred commands
+	 */
+	public BackgroundMigrationRunner(Executor executor, DataSource dataSource, DeferredSqlCommands deferredCommands,
+			SqlCommandsRunner runner) {
+		Assert.notNull(executor, "executor must be set");
+		Assert.notNull(dataSource, "dataSource must be set");
+		Assert.notNull(deferredCommands, "deferredCommands must be set");
+		Assert.notNull(runner, "runner must be set");
+		this.executor = executor;
+		this.dataSource = dataSource;
+		this.deferredCommands = deferredCommands;
+		this.runner = runner;
+	}
+
+	/**
+	 * Start a migration, i.e. {@code flyway::migrate}, in a background.
+	 *
+	 * @param migration the migration
+	 * @return the readiness gate completing when migration has been applied
+	 */
+	public CompletableFuture<Void> start(Runnable migration) {
+		Assert.notNull(migration, "migration must be set");
+		executor.execute(() -> {
+			try {
+				migration.run();
+				ready.complete(null);
+			}
+			catch (Throwable e) {
+				logger.error("Background migration failed", e);
+				ready.completeExceptionally(e);
+				completed.completeExceptionally(e);
+				return;
+			}
+			try {
+				executeDeferred();
+				completed.complete(null);
+			}
+			catch (Throwable e) {
+				logger.error("Deferred migration commands failed", e);
+				completed.completeExceptionally(e);
+			}
+		});
+		return ready;
+	}
+
+	/**
+	 * Gets the readiness gate completing when migration has been applied.
+	 *
+	 * @return the readiness gate
+	 */
+	public CompletableFuture<Void> getReady() {
+		return ready;
+	}
+
+	/**
+	 * Gets the future completing when deferred commands have been executed.
+	 *
+	 * @return the completion future
+	 */
+	public CompletableFuture<Void> getCompleted() {
+		return completed;
+	}
+
+	/**
+	 * Wait until migration has been applied.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @return true, if migration was applied, false if timeout elapsed
+	 * @throws DataFlowSchemaMigrationException if migration failed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitReady(Duration timeout) throws InterruptedException {
+		try {
+			ready.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+			return true;
+		}
+		catch (TimeoutException e) {
+			return false;
+		}
+		catch (ExecutionException e) {
+			throw new DataFlowSchemaMigrationException("Background migration failed", e.getCause());
+		}
+	}
+
+	private void executeDeferred() throws Exception {
+		try (Connection connection = dataSource.getConnection()) {
+			int executed = deferredCommands.execute(runner, connection);
+			if (executed > 0) {
+				logger.info("Executed {} deferred migration commands", executed);
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.util.Assert;
+
+/**
+ * Command executing a single parameterized sql template for rows of bind
+ * values as one prepared statement with jdbc batching, instead of inlining
+ * values into a literal statement per row. Rows are read anew on every
+ * execution, so a command can be executed more than once, for example when
+ * rehearsed before it is migrated.
+ */
+public class BatchSqlCommand extends SqlCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchSqlCommand.class);
+	private static final int DEFAULT_BATCH_SIZE = 100;
+	private final Supplier<Stream<Object[]>> rows;
+	private final int batchSize;
+
+	/**
+	 * Convenience method returning new instance.
+	 *
+	 * @param command the parameterized command
+	 * @param rows the bind values of rows
+	 * @return the batch sql command
+	 */
+	public static BatchSqlCommand from(String command, Object[]... rows) {
+		return new BatchSqlCommand(command, Arrays.asList(rows), DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Convenience method returning new instance for streams of rows. A new
+	 * stream is requested and closed on every execution of a command.
+	 *
+	 * @param command the parameterized command
+	 * @param rows the supplier of streams of bind values of rows
+	 * @param batchSize the number of rows in a batch
+	 * @return the batch sql command
+	 */
+	public static BatchSqlCommand from(String command, Supplier<Stream<Object[]>> rows, int batchSize) {
+		return new BatchSqlCommand(command, rows, batchSize);
+	}
+
+	/**
+	 * Instantiates a new batch sql command.
+	 *
+	 * @param command the parameterized command
+	 * @param rows the bind values of rows
+	 * @param batchSize the number of rows in a batch
+	 */
+	public BatchSqlCommand(String command, Iterable<Object[]> rows, int batchSize) {
+		this(command, streamOf(rows), batchSize);
+	}
+
+	private BatchSqlCommand(String command, Supplier<Stream<Object[]>> rows, int batchSize) {
+		super(command, null);
+		Assert.hasText(command, "command must be set");
+		Assert.notNull(rows, "rows must be set");
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.rows = rows;
+		this.batchSize = batchSize;
+	}
+
+	private static Supplier<Stream<Object[]>> streamOf(Iterable<Object[]> rows) {
+		Assert.notNull(rows, "rows must be set");
+		return () -> StreamSupport.stream(rows.spliterator(), false);
+	}
+
+	/**
+	 * Gets the number of rows in a batch.
+	 *
+	 * @return the batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@Override
+	public boolean canHandleInJdbcTemplate() {
+		return true;
+	}
+
+	@Override
+	public void handle(JdbcTemplate jdbcTemplate, Connection connection) {
+		handleBatch(jdbcTemplate, connection);
+	}
+
+	/**
+	 * Handle command in a given jdbc template returning a number of rows
+	 * executed in batches.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param connection the sql connection
+	 * @return the number of rows
+	 */
+	public int handleBatch(JdbcTemplate jdbcTemplate, Connection connection) {
+		logger.debug("Executing batch command {}", getCommand());
+		Integer count;
+		try (Stream<Object[]> stream = rows.get()) {
+			Assert.state(stream != null, "rows must supply a stream");
+			count = jdbcTemplate.execute(getCommand(), (PreparedStatementCallback<Integer>) ps -> {
+				int total = 0;
+				int pending = 0;
+				Iterator<Object[]> iterator = stream.iterator();
+				while (iterator.hasNext()) {
+					new ArgumentPreparedStatementSetter(iterator.next()).setValues(ps);
+					ps.addBatch();
+					total++;
+					if (++pending >= batchSize) {
+						ps.executeBatch();
+						pending = 0;
+					}
+				}
+				if (pending > 0) {
+					ps.executeBatch();
+				}
+				return total;
+			});
+		}
+		logger.debug("Executed batch command for {} rows", count);
+		return count != null ? count : 0;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * {@link SqlCommandsRunner} applying vendor specific session tuning for bulk
+ * data loading for a duration of an execution and restoring original
+ * settings afterwards. Commands are batched with a larger batch size and an
+ * auto-commit connection is switched to a single transaction committed at the
+ * end. MySQL disables {@code unique_checks} and {@code foreign_key_checks}
+ * and PostgreSQL disables {@code synchronous_commit}.
+ * <p>
+ * Bulk mode is meant for data moving commands, thus commands needing an
+ * auto-commit connection like online index builds should not be executed with
+ * this runner.
+ */
+public class BulkModeSqlCommandsRunner extends SqlCommandsRunner {
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkModeSqlCommandsRunner.class);
+	private static final int DEFAULT_BULK_BATCH_SIZE = 1000;
+
+	/**
+	 * Instantiates a new bulk mode sql commands runner.
+	 */
+	public BulkModeSqlCommandsRunner() {
+		super();
+		setBatchEnabled(true);
+		setBatchSize(DEFAULT_BULK_BATCH_SIZE);
+	}
+
+	@Override
+	public void execute(String executionId, Connection connection, Iterator<SqlCommand> commands) {
+		boolean autoCommit = getAutoCommit(connection);
+		List<String> restoreCommands = new ArrayList<>();
+		boolean success = false;
+		try {
+			restoreCommands = applySessionSettings(connection, SqlDialect.fromConnection(connection));
+			if (autoCommit) {
+				connection.setAutoCommit(false);
+			}
+			super.execute(executionId, connection, commands);
+			if (autoCommit) {
+				connection.commit();
+			}
+			success = true;
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to apply bulk mode session settings", e);
+		}
+		finally {
+			restore(connection, autoCommit, success, restoreCommands);
+		}
+	}
+
+	/**
+	 * Apply session settings and return statements restoring original values.
+	 */
+	private static List<String> applySessionSettings(Connection connection, SqlDialect dialect)
+			throws SQLException {
+		List<String> restoreCommands = new ArrayList<>();
+		Statement statement = connection.createStatement();
+		try {
+			switch (dialect) {
+				case MYSQL:
+				case MARIADB:
+					try (ResultSet rs = statement
+							.executeQuery("SELECT @@SESSION.unique_checks, @@SESSION.foreign_key_checks")) {
+						rs.next();
+						restoreCommands.add("SET unique_checks = " + rs.getInt(1));
+						restoreCommands.add("SET foreign_key_checks = " + rs.getInt(2));
+					}
+					statement.execute("SET unique_checks = 0");
+					statement.execute("SET foreign_key_checks = 0");
+					break;
+				case POSTGRESQL:
+					try (ResultSet rs = statement.executeQuery("SHOW synchronous_commit")) {
+						rs.next();
+						restoreCommands.add("SET synchronous_commit = " + rs.getString(1));
+					}
+					statement.execute("SET synchronous_commit = off");
+					break;
+				default:
+					break;
+			}
+		}
+		finally {
+			JdbcUtils.closeStatement(statement);
+		}
+		logger.debug("Applied bulk mode session settings for {}", dialect);
+		return restoreCommands;
+	}
+
+	private static void restore(Connection connection, boolean autoCommit, boolean success,
+			List<String> restoreCommands) {
+		try {
+			if (autoCommit) {
+				if (!success) {
+					connection.rollback();
+				}
+				connection.setAutoCommit(true);
+			}
+		}
+		catch (SQLException e) {
+			logger.warn("Unable to restore auto-commit mode", e);
+		}
+		Statement statement = null;
+		try {
+			statement = connection.createStatement();
+			for (String restoreCommand : restoreCommands) {
+				statement.execute(restoreCommand);
+			}
+		}
+		catch (SQLException e) {
+			logger.warn("Unable to restore session settings", e);
+		}
+		finally {
+			JdbcUtils.closeStatement(statement);
+		}
+	}
+
+	private static boolean getAutoCommit(Connection connection) {
+		try {
+			return connection.getAutoCommit();
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to read auto-commit mode", e);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Journal table keeping track of completed commands and chunks of a command
+ * list so that a retried execution can resume where a previous one stopped.
+ * Journal is written using the same connection commands are executed with,
+ * thus checkpoints are rolled back together with a failed transactional
+ * migration and committed together with commands in an auto-commit mode.
+ */
+public class CheckpointJournal {
+
+	/** Default name of a journal table */
+	public static final String DEFAULT_TABLE_NAME = "DATAFLOW_MIGRATION_CHECKPOINT";
+	private final String tableName;
+
+	/**
+	 * Instantiates a new checkpoint journal using a default table name.
+	 */
+	public CheckpointJournal() {
+		this(DEFAULT_TABLE_NAME);
+	}
+
+	/**
+	 * Instantiates a new checkpoint journal.
+	 *
+	 * @param tableName the journal table name
+	 */
+	public CheckpointJournal(String tableName) {
+		Assert.hasText(tableName, "tableName must be set");
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Gets the table name.
+	 *
+	 * @return the table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Creates a journal table if it doesn't exist.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param snapshot the database metadata snapshot
+	 */
+	public void initialize(JdbcTemplate jdbcTemplate, DatabaseMetaDataSnapshot snapshot) {
+		SchemaTables.createIfAbsent(jdbcTemplate, snapshot, tableName,
+				"EXECUTION_ID VARCHAR(255) NOT NULL PRIMARY KEY, COMMAND_INDEX INTEGER NOT NULL, "
+						+ "CHUNK_POSITION NUMERIC(19)");
+	}
+
+	/**
+	 * Find a checkpoint of an execution.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param executionId the execution id
+	 * @return the checkpoint, {@code null} if execution has no checkpoint
+	 */
+	public Checkpoint find(JdbcTemplate jdbcTemplate, String executionId) {
+		List<Checkpoint> checkpoints = jdbcTemplate.query(
+				"SELECT COMMAND_INDEX, CHUNK_POSITION FROM " + tableName + " WHERE EXECUTION_ID = ?",
+				(rs, rowNum) -> {
+					int commandIndex = rs.getInt(1);
+					long chunkPosition = rs.getLong(2);
+					return new Checkpoint(commandIndex, rs.wasNull() ? null : chunkPosition);
+				}, executionId);
+		return checkpoints.isEmpty() ? null : checkpoints.get(0);
+	}
+
+	/**
+	 * Save a checkpoint of an execution.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param executionId the execution id
+	 * @param checkpoint the checkpoint
+	 */
+	public void save(JdbcTemplate jdbcTemplate, String executionId, Checkpoint checkpoint) {
+		int updated = jdbcTemplate.update(
+				"UPDATE " + tableName + " SET COMMAND_INDEX = ?, CHUNK_POSITION = ? WHERE EXECUTION_ID = ?",
+				checkpoint.getCommandIndex(), checkpoint.getChunkPosition(), executionId);
+		if (updated == 0) {
+			jdbcTemplate.update(
+					"INSERT INTO " + tableName + " (EXECUTION_ID, COMMAND_INDEX, CHUNK_POSITION) VALUES (?, ?, ?)",
+					executionId, checkpoint.getCommandIndex(), checkpoint.getChunkPosition());
+		}
+	}
+
+	/**
+	 * Delete a checkpoint of a completed execution.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param executionId the execution id
+	 */
+	public void delete(JdbcTemplate jdbcTemplate, String executionId) {
+		jdbcTemplate.update("DELETE FROM " + tableName + " WHERE EXECUTION_ID = ?", executionId);
+	}
+
+	/**
+	 * Position of an execution.
+	 */
+	public static class Checkpoint {
+
+		private final int commandIndex;
+		private final Long chunkPosition;
+
+		/**
+		 * Instantiates a new checkpoint.
+		 *
+		 * @param commandIndex the index of a next command to execute
+		 * @param chunkPosition the start of a next chunk of a command, may be {@code null}
+		 */
+		public Checkpoint(int commandIndex, Long chunkPosition) {
+			this.commandIndex = commandIndex;
+			this.chunkPosition = chunkPosition;
+		}
+
+		/**
+		 * Gets the index of a next command to execute.
+		 *
+		 * @return the command index
+		 */
+		public int getCommandIndex() {
+			return commandIndex;
+		}
+
+		/**
+		 * Gets the start of a next chunk of a command.
+		 *
+		 * @return the chunk position, {@code null} if command has no completed chunks
+		 */
+		public Long getChunkPosition() {
+			return chunkPosition;
+		}
+	}
+}
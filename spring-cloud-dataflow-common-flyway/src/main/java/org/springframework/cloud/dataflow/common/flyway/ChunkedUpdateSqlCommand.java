@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Command backfilling a table with an {@code UPDATE} split into primary key
+ * ranges of a given size instead of updating all rows in one statement.
+ */
+public class ChunkedUpdateSqlCommand extends AbstractChunkedSqlCommand {
+
+	private final String setClause;
+
+	/**
+	 * Instantiates a new chunked update sql command.
+	 *
+	 * @param tableName the table name
+	 * @param keyColumn the numeric key column
+	 * @param setClause the set clause without {@code SET} keyword
+	 * @param whereClause the additional where clause, may be {@code null}
+	 * @param chunkSize the size of a key range in a chunk
+	 */
+	public ChunkedUpdateSqlCommand(String tableName, String keyColumn, String setClause, String whereClause,
+			long chunkSize) {
+		super("UPDATE " + tableName + " SET " + setClause
+				+ (StringUtils.hasText(whereClause) ? " WHERE " + whereClause : ""), tableName, keyColumn,
+				whereClause, chunkSize);
+		Assert.hasText(setClause, "setClause must be set");
+		this.setClause = setClause;
+	}
+
+	@Override
+	protected int handleChunk(JdbcTemplate jdbcTemplate, Connection connection, long from, long to) {
+		return jdbcTemplate.update("UPDATE " + getTableName() + " SET " + setClause + " WHERE "
+				+ getChunkWhereClause(), from, to);
+	}
+}
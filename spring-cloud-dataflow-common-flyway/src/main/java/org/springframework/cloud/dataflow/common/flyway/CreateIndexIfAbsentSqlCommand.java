@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import org.springframework.util.Assert;
+
+/**
+ * Command creating an index if it doesn't exist.
+ */
+public class CreateIndexIfAbsentSqlCommand extends AbstractConditionalSqlCommand {
+
+	private final String indexName;
+
+	/**
+	 * Instantiates a new create index if absent sql command.
+	 *
+	 * @param tableName the table name
+	 * @param indexName the index name
+	 * @param command the create index command
+	 */
+	public CreateIndexIfAbsentSqlCommand(String tableName, String indexName, String command) {
+		super(tableName, command);
+		Assert.hasText(indexName, "indexName must be set");
+		this.indexName = indexName;
+	}
+
+	/**
+	 * Gets the index name.
+	 *
+	 * @return the index name
+	 */
+	public String getIndexName() {
+		return indexName;
+	}
+
+	@Override
+	public boolean isPresent(DatabaseMetaDataSnapshot snapshot) {
+		return snapshot.hasIndex(getTableName(), indexName);
+	}
+}
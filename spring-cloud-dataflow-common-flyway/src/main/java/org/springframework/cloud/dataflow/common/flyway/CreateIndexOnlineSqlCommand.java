@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Command creating an index without blocking writes to a table using a
+ * dialect specific online index build. Online builds can't be part of a
+ * transaction on all databases so this command reports itself as not
+ * executable in a transaction which makes migrations and callbacks using it
+ * non-transactional. Databases without online index builds get a plain
+ * {@code CREATE INDEX}.
+ * <p>
+ * A failed concurrent build on PostgreSQL leaves an invalid index behind,
+ * which is not considered present and is dropped before it's built again.
+ */
+public class CreateIndexOnlineSqlCommand extends CreateIndexIfAbsentSqlCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(CreateIndexOnlineSqlCommand.class);
+	// sql server error when online operations are not supported by its edition
+	private static final int SQLSERVER_ONLINE_NOT_SUPPORTED = 1712;
+	private static final String POSTGRESQL_INDEX_VALID = "SELECT i.indisvalid FROM pg_catalog.pg_index i "
+			+ "JOIN pg_catalog.pg_class c ON c.oid = i.indexrelid "
+			+ "WHERE c.relname = ? AND pg_catalog.pg_table_is_visible(c.oid)";
+	private final String columns;
+
+	/**
+	 * Instantiates a new create index online sql command.
+	 *
+	 * @param tableName the table name
+	 * @param indexName the index name
+	 * @param columns the comma delimited index columns
+	 */
+	public CreateIndexOnlineSqlCommand(String tableName, String indexName, String columns) {
+		super(tableName, indexName, "CREATE INDEX " + indexName + " ON " + tableName + " (" + columns + ")");
+		this.columns = columns;
+	}
+
+	/**
+	 * Gets the comma delimited index columns.
+	 *
+	 * @return the index columns
+	 */
+	public String getColumns() {
+		return columns;
+	}
+
+	@Override
+	public boolean isPresent(DatabaseMetaDataSnapshot snapshot) {
+		if (!super.isPresent(snapshot)) {
+			return false;
+		}
+		Connection connection = snapshot.getConnection();
+		if (SqlDialect.fromConnection(connection) == SqlDialect.POSTGRESQL
+				&& Boolean.FALSE.equals(isValid(connection))) {
+			logger.info("Index {} is invalid after a failed concurrent build, rebuilding it", getIndexName());
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean canExecuteInTransaction() {
+		return false;
+	}
+
+	@Override
+	public boolean isDeferrable() {
+		return true;
+	}
+
+	@Override
+	public boolean canHandleInJdbcTemplate() {
+		return true;
+	}
+
+	@Override
+	public void handle(JdbcTemplate jdbcTemplate, Connection connection) {
+		SqlDialect dialect = SqlDialect.fromConnection(connection);
+		boolean invalid = dialect == SqlDialect.POSTGRESQL && Boolean.FALSE.equals(isValid(connection));
+		if (dialect == SqlDialect.POSTGRESQL && !isAutoCommit(connection)) {
+			logger.warn("Unable to create index {} concurrently within a transaction, using blocking index build",
+					getIndexName());
+			dialect = SqlDialect.UNKNOWN;
+		}
+		if (invalid) {
+			String drop = (dialect == SqlDialect.POSTGRESQL ? "DROP INDEX CONCURRENTLY " : "DROP INDEX ")
+					+ getIndexName();
+			logger.warn("Dropping invalid index {} left by a failed concurrent build", getIndexName());
+			jdbcTemplate.execute(drop);
+		}
+		String sql = getOnlineCommand(dialect);
+		logger.debug("Executing command {}", sql);
+		try {
+			jdbcTemplate.execute(sql);
+		}
+		catch (DataAccessException e) {
+			if (dialect == SqlDialect.SQLSERVER && e.getCause() instanceof SQLException
+					&& ((SQLException) e.getCause()).getErrorCode() == SQLSERVER_ONLINE_NOT_SUPPORTED) {
+				logger.info("Online index build not supported, using blocking index build for {}", getIndexName());
+				jdbcTemplate.execute(getCommand());
+			}
+			else {
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Gets the online index build command for a dialect.
+	 *
+	 * @param dialect the sql dialect
+	 * @return the online index build command
+	 */
+	public String getOnlineCommand(SqlDialect dialect) {
+		switch (dialect) {
+			case POSTGRESQL:
+				return "CREATE INDEX CONCURRENTLY " + getIndexName() + " ON " + getTableName() + " (" + columns + ")";
+			case SQLSERVER:
+				return getCommand() + " WITH (ONLINE = ON)";
+			case ORACLE:
+				return getCommand() + " ONLINE";
+			case MYSQL:
+			case MARIADB:
+				return getCommand() + " ALGORITHM=INPLACE LOCK=NONE";
+			default:
+				return getCommand();
+		}
+	}
+
+	// null if index doesn't exist
+	private Boolean isValid(Connection connection) {
+		try (PreparedStatement ps = connection.prepareStatement(POSTGRESQL_INDEX_VALID)) {
+			// unquoted identifiers are folded to lower case
+			ps.setString(1, getIndexName().toLowerCase(Locale.ROOT));
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() ? rs.getBoolean(1) : null;
+			}
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to read validity of index " + getIndexName(), e);
+		}
+	}
+
+	private static boolean isAutoCommit(Connection connection) {
+		try {
+			return connection.getAutoCommit();
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+}
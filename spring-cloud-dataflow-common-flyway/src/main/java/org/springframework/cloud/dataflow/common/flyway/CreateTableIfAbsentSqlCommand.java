@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+/**
+ * Command creating a table if it doesn't exist.
+ */
+public class CreateTableIfAbsentSqlCommand extends AbstractConditionalSqlCommand {
+
+	/**
+	 * Instantiates a new create table if absent sql command.
+	 *
+	 * @param tableName the table name
+	 * @param command the create table command
+	 */
+	public CreateTableIfAbsentSqlCommand(String tableName, String command) {
+		super(tableName, command);
+	}
+
+	@Override
+	public boolean isPresent(DatabaseMetaDataSnapshot snapshot) {
+		return snapshot.hasTable(getTableName());
+	}
+}
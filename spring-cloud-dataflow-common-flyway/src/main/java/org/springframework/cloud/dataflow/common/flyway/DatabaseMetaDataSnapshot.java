@@ -0,0 +1,244 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Lazily populated snapshot of {@link DatabaseMetaData} for a current schema of
+ * a connection. Table names are read once with a single metadata call and
+ * columns and indexes are read once per table when first needed. Identifiers
+ * are compared case insensitively.
+ */
+public class DatabaseMetaDataSnapshot {
+
+	private static final Logger logger = LoggerFactory.getLogger(DatabaseMetaDataSnapshot.class);
+	private final Connection connection;
+	private final Map<String, Set<String>> columns = new HashMap<>();
+	private final Map<String, Set<String>> indexes = new HashMap<>();
+	private DatabaseMetaData metaData;
+	private String catalog;
+	private String schema;
+	private Map<String, String> tables;
+
+	/**
+	 * Instantiates a new database metadata snapshot.
+	 *
+	 * @param connection the connection
+	 */
+	public DatabaseMetaDataSnapshot(Connection connection) {
+		Assert.notNull(connection, "connection must be set");
+		this.connection = connection;
+	}
+
+	/**
+	 * Checks if table exists.
+	 *
+	 * @param table the table name
+	 * @return true, if table exists
+	 */
+	public boolean hasTable(String table) {
+		return getTables().containsKey(normalize(table));
+	}
+
+	/**
+	 * Checks if column exists in a table.
+	 *
+	 * @param table the table name
+	 * @param column the column name
+	 * @return true, if column exists
+	 */
+	public boolean hasColumn(String table, String column) {
+		return getColumns(table).contains(normalize(column));
+	}
+
+	/**
+	 * Checks if index exists in a table.
+	 *
+	 * @param table the table name
+	 * @param index the index name
+	 * @return true, if index exists
+	 */
+	public boolean hasIndex(String table, String index) {
+		return getIndexes(table).contains(normalize(index));
+	}
+
+	/**
+	 * Gets the connection metadata is read from.
+	 *
+	 * @return the connection
+	 */
+	Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Invalidates cached information of a table.
+	 *
+	 * @param table the table name
+	 */
+	public void invalidate(String table) {
+		String key = normalize(table);
+		columns.remove(key);
+		indexes.remove(key);
+		if (tables != null) {
+			// table may have been created, re-read only this table
+			refreshTable(table);
+		}
+	}
+
+	/**
+	 * Invalidates all cached information.
+	 */
+	public void invalidate() {
+		tables = null;
+		columns.clear();
+		indexes.clear();
+	}
+
+	private Map<String, String> getTables() {
+		if (tables == null) {
+			Map<String, String> found = new HashMap<>();
+			try (ResultSet rs = getMetaData().getTables(catalog, schema, null, new String[] { "TABLE" })) {
+				while (rs.next()) {
+					String name = rs.getString("TABLE_NAME");
+					found.put(normalize(name), name);
+				}
+			}
+			catch (SQLException e) {
+				throw new DataFlowSchemaMigrationException("Unable to read table metadata", e);
+			}
+			logger.debug("Read metadata for {} tables", found.size());
+			tables = found;
+		}
+		return tables;
+	}
+
+	private void refreshTable(String table) {
+		String key = normalize(table);
+		tables.remove(key);
+		String name = getTableName(table);
+		try (ResultSet rs = getMetaData().getTables(catalog, schema, name, new String[] { "TABLE" })) {
+			while (rs.next()) {
+				// table name is a pattern so filter out possible wildcard matches
+				String found = rs.getString("TABLE_NAME");
+				if (key.equals(normalize(found))) {
+					tables.put(key, found);
+				}
+			}
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to read table metadata for " + table, e);
+		}
+	}
+
+	private Set<String> getColumns(String table) {
+		return columns.computeIfAbsent(normalize(table), key -> {
+			Set<String> found = new HashSet<>();
+			String name = getTableName(table);
+			try (ResultSet rs = getMetaData().getColumns(catalog, schema, name, null)) {
+				while (rs.next()) {
+					// table name is a pattern so filter out possible wildcard matches
+					if (name.equals(rs.getString("TABLE_NAME"))) {
+						found.add(normalize(rs.getString("COLUMN_NAME")));
+					}
+				}
+			}
+			catch (SQLException e) {
+				throw new DataFlowSchemaMigrationException("Unable to read column metadata for " + table, e);
+			}
+			return found;
+		});
+	}
+
+	private Set<String> getIndexes(String table) {
+		return indexes.computeIfAbsent(normalize(table), key -> {
+			Set<String> found = new HashSet<>();
+			if (!hasTable(table)) {
+				return found;
+			}
+			// approximate as some drivers would otherwise gather statistics
+			try (ResultSet rs = getMetaData().getIndexInfo(catalog, schema, getTableName(table), false, true)) {
+				while (rs.next()) {
+					String index = rs.getString("INDEX_NAME");
+					if (index != null) {
+						found.add(normalize(index));
+					}
+				}
+			}
+			catch (SQLException e) {
+				throw new DataFlowSchemaMigrationException("Unable to read index metadata for " + table, e);
+			}
+			return found;
+		});
+	}
+
+	private String getTableName(String table) {
+		String name = getTables().get(normalize(table));
+		if (name != null) {
+			return name;
+		}
+		try {
+			DatabaseMetaData metaData = getMetaData();
+			if (metaData.storesUpperCaseIdentifiers()) {
+				return table.toUpperCase(Locale.ROOT);
+			}
+			if (metaData.storesLowerCaseIdentifiers()) {
+				return table.toLowerCase(Locale.ROOT);
+			}
+		}
+		catch (SQLException e) {
+			logger.debug("Unable to resolve identifier case", e);
+		}
+		return table;
+	}
+
+	private DatabaseMetaData getMetaData() throws SQLException {
+		if (metaData == null) {
+			metaData = connection.getMetaData();
+			catalog = connection.getCatalog();
+			schema = getSchema(connection);
+		}
+		return metaData;
+	}
+
+	private static String getSchema(Connection connection) {
+		try {
+			return connection.getSchema();
+		}
+		catch (SQLException | AbstractMethodError e) {
+			// older drivers don't implement jdbc 4.1
+			return null;
+		}
+	}
+
+	private static String normalize(String identifier) {
+		return identifier.toUpperCase(Locale.ROOT);
+	}
+}
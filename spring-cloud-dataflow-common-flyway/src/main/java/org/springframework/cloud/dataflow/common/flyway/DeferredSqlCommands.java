@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Journal table of deferrable {@link SqlCommand}s collected by a
+ * {@link SqlCommandsRunner} instead of executing those during a migration.
+ * Commands are written using the same connection a migration is executed
+ * with, thus those are committed together with a migration, and removed one
+ * by one after executed. Commands left in a table by an application which
+ * stopped before executing those are executed on a next start.
+ * <p>
+ * {@link CreateIndexOnlineSqlCommand} and {@link RefreshStatisticsSqlCommand}
+ * are restored as such, other deferrable commands are restored as plain
+ * {@link SqlCommand}s with their command text and suppressed error codes.
+ * <p>
+ * Commands are ordered by a sequence id taken as a next value after a max
+ * id. A writer which loses a race for an id to a concurrent writer retries
+ * with a next id, using a savepoint if executed within a transaction.
+ */
+public class DeferredSqlCommands {
+
+	/** Default name of a journal table */
+	public static final String DEFAULT_TABLE_NAME = "DATAFLOW_MIGRATION_DEFERRED";
+	private static final Logger logger = LoggerFactory.getLogger(DeferredSqlCommands.class);
+	private static final String TYPE_INDEX = "INDEX";
+	private static final String TYPE_STATISTICS = "STATISTICS";
+	private static final String TYPE_COMMAND = "COMMAND";
+	private static final int MAX_INSERT_ATTEMPTS = 5;
+	private final String tableName;
+
+	/**
+	 * Instantiates a new deferred sql commands using a default table name.
+	 */
+	public DeferredSqlCommands() {
+		this(DEFAULT_TABLE_NAME);
+	}
+
+	/**
+	 * Instantiates a new deferred sql commands.
+	 *
+	 * @param tableName the journal table name
+	 */
+	public DeferredSqlCommands(String tableName) {
+		Assert.hasText(tableName, "tableName must be set");
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Gets the table name.
+	 *
+	 * @return the table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Adds a deferred command, creating a journal table if it doesn't exist.
+	 *
+	 * @param jdbcTemplate the jdbc template of a migration connection
+	 * @param snapshot the database metadata snapshot
+	 * @param executionId the execution id command was deferred from, may be {@code null}
+	 * @param command the sql command
+	 */
+	public void add(JdbcTemplate jdbcTemplate, DatabaseMetaDataSnapshot snapshot, String executionId,
+			SqlCommand command) {
+		logger.debug("Deferring command {}", command.getCommand());
+		initialize(jdbcTemplate, snapshot);
+		String type = TYPE_COMMAND;
+		String table = null;
+		String index = null;
+		String columns = null;
+		if (command instanceof CreateIndexOnlineSqlCommand) {
+			CreateIndexOnlineSqlCommand indexCommand = (CreateIndexOnlineSqlCommand) command;
+			type = TYPE_INDEX;
+			table = indexCommand.getTableName();
+			index = indexCommand.getIndexName();
+			columns = indexCommand.getColumns();
+		}
+		else if (command instanceof RefreshStatisticsSqlCommand) {
+			type = TYPE_STATISTICS;
+			table = ((RefreshStatisticsSqlCommand) command).getTableName();
+		}
+		else if (command.getClass() != SqlCommand.class) {
+			logger.warn("Deferred command {} is restored as a plain sql command", command.getClass().getName());
+		}
+		String errorCodes = command.getSuppressedErrorCodes() != null
+				? StringUtils.collectionToCommaDelimitedString(command.getSuppressedErrorCodes())
+				: null;
+		Connection connection = snapshot.getConnection();
+		for (int attempt = 1;; attempt++) {
+			Savepoint savepoint = SqlCommandsRunner.createSavepoint(connection);
+			try {
+				Long last = jdbcTemplate.queryForObject("SELECT MAX(SEQUENCE_ID) FROM " + tableName, Long.class);
+				jdbcTemplate.update("INSERT INTO " + tableName + " (SEQUENCE_ID, EXECUTION_ID, COMMAND_TYPE, "
+						+ "TABLE_NAME, INDEX_NAME, INDEX_COLUMNS, COMMAND_TEXT, ERROR_CODES) "
+						+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", last != null ? last + 1 : 1, executionId, type, table,
+						index, columns, command.getCommand(), errorCodes);
+				SqlCommandsRunner.releaseSavepoint(connection, savepoint);
+				return;
+			}
+			catch (DuplicateKeyException e) {
+				// concurrent writer took a same sequence id
+				if (attempt >= MAX_INSERT_ATTEMPTS
+						|| (savepoint == null && !isAutoCommit(connection))
+						|| (savepoint != null && !SqlCommandsRunner.rollbackSavepoint(connection, savepoint))) {
+					throw e;
+				}
+				logger.debug("Retrying deferring command {} with a next sequence id", command.getCommand());
+			}
+		}
+	}
+
+	/**
+	 * Execute and remove all deferred commands in an order those were added.
+	 * A command is removed from a journal table after it has been executed,
+	 * thus a failed command and commands after it are kept for a next call.
+	 * Commands are not deferred again even if a runner has deferred commands
+	 * set.
+	 *
+	 * @param runner the sql commands runner
+	 * @param connection the connection
+	 * @return the number of executed commands
+	 */
+	public int execute(SqlCommandsRunner runner, Connection connection) {
+		if (!new DatabaseMetaDataSnapshot(connection).hasTable(tableName)) {
+			return 0;
+		}
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+		List<DeferredSqlCommand> commands = jdbcTemplate.query("SELECT SEQUENCE_ID, EXECUTION_ID, COMMAND_TYPE, "
+				+ "TABLE_NAME, INDEX_NAME, INDEX_COLUMNS, COMMAND_TEXT, ERROR_CODES FROM " + tableName
+				+ " ORDER BY SEQUENCE_ID", (rs, rowNum) -> new DeferredSqlCommand(rs.getLong(1), rs.getString(2),
+						restore(rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6),
+								rs.getString(7), rs.getString(8))));
+		for (DeferredSqlCommand deferred : commands) {
+			// bypass deferring as a runner may have same deferred commands set
+			runner.executeDeferred(deferredId(deferred.executionId), connection,
+					Collections.singletonList(deferred.command));
+			jdbcTemplate.update("DELETE FROM " + tableName + " WHERE SEQUENCE_ID = ?", deferred.sequenceId);
+		}
+		return commands.size();
+	}
+
+	private void initialize(JdbcTemplate jdbcTemplate, DatabaseMetaDataSnapshot snapshot) {
+		SchemaTables.createIfAbsent(jdbcTemplate, snapshot, tableName,
+				"SEQUENCE_ID NUMERIC(19) NOT NULL PRIMARY KEY, EXECUTION_ID VARCHAR(255), "
+						+ "COMMAND_TYPE VARCHAR(20) NOT NULL, TABLE_NAME VARCHAR(255), INDEX_NAME VARCHAR(255), "
+						+ "INDEX_COLUMNS VARCHAR(1000), COMMAND_TEXT VARCHAR(4000), ERROR_CODES VARCHAR(255)");
+	}
+
+	private static SqlCommand restore(String type, String table, String index, String columns, String text,
+			String errorCodes) {
+		if (TYPE_INDEX.equals(type)) {
+			return new CreateIndexOnlineSqlCommand(table, index, columns);
+		}
+		if (TYPE_STATISTICS.equals(type)) {
+			return new RefreshStatisticsSqlCommand(table);
+		}
+		List<Integer> codes = new ArrayList<>();
+		for (String code : StringUtils.commaDelimitedListToStringArray(errorCodes)) {
+			codes.add(Integer.valueOf(code.trim()));
+		}
+		return new SqlCommand(text, codes.isEmpty() ? null : codes);
+	}
+
+	private static boolean isAutoCommit(Connection connection) {
+		try {
+			return connection.getAutoCommit();
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private static String deferredId(String executionId) {
+		return executionId != null ? executionId + ":deferred" : null;
+	}
+
+	private static class DeferredSqlCommand {
+
+		private final long sequenceId;
+		private final String executionId;
+		private final SqlCommand command;
+
+		DeferredSqlCommand(long sequenceId, String executionId, SqlCommand command) {
+			this.sequenceId = sequenceId;
+			this.executionId = executionId;
+			this.command = command;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * Sets of {@link SqlCommand}s keyed by a {@link SqlDialect} with a default
+ * set used for dialects without their own commands.
+ */
+public class DialectSqlCommands {
+
+	private final Map<SqlDialect, List<SqlCommand>> commands = new EnumMap<>(SqlDialect.class);
+	private final List<SqlCommand> defaultCommands;
+
+	/**
+	 * Instantiates a new dialect sql commands without default commands.
+	 */
+	public DialectSqlCommands() {
+		this(Collections.emptyList());
+	}
+
+	/**
+	 * Instantiates a new dialect sql commands.
+	 *
+	 * @param defaultCommands the default commands
+	 */
+	public DialectSqlCommands(List<SqlCommand> defaultCommands) {
+		Assert.notNull(defaultCommands, "defaultCommands must be set");
+		this.defaultCommands = defaultCommands;
+	}
+
+	/**
+	 * Adds commands for a dialect.
+	 *
+	 * @param dialect the sql dialect
+	 * @param dialectCommands the commands for a dialect
+	 * @return this instance for chaining
+	 */
+	public DialectSqlCommands add(SqlDialect dialect, List<SqlCommand> dialectCommands) {
+		Assert.notNull(dialect, "dialect must be set");
+		Assert.notNull(dialectCommands, "dialectCommands must be set");
+		commands.put(dialect, dialectCommands);
+		return this;
+	}
+
+	/**
+	 * Gets the commands for a dialect.
+	 *
+	 * @param dialect the sql dialect
+	 * @return the commands for a dialect or default commands
+	 */
+	public List<SqlCommand> getCommands(SqlDialect dialect) {
+		return commands.getOrDefault(dialect, defaultCommands);
+	}
+
+	/**
+	 * Checks if commands of all dialects can be executed within a transaction.
+	 *
+	 * @return true, if commands can be executed in a transaction
+	 */
+	public boolean canExecuteInTransaction() {
+		if (!SqlCommandsRunner.canExecuteInTransaction(defaultCommands)) {
+			return false;
+		}
+		for (List<SqlCommand> dialectCommands : commands.values()) {
+			if (!SqlCommandsRunner.canExecuteInTransaction(dialectCommands)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Runs Flyway migrations from a single elected node when multiple nodes share
+ * a database. A node acquiring a lease on a lock row runs Flyway and records a
+ * reached schema version into a same row. Other nodes poll that row with a
+ * backoff and return without entering Flyway once an expected version has been
+ * reached, or take over a lease if a leader stops renewing it.
+ * <p>
+ * Lease heartbeats are written with a database {@code CURRENT_TIMESTAMP} and
+ * compared against a database time read in a same query, so clocks of nodes
+ * are never compared with each other. A lease version is incremented with
+ * every change of a lease and a takeover only succeeds if a version has not
+ * changed since a lease was read.
+ * <p>
+ * A leader checks its lease before each migration and aborts if a lease has
+ * been taken over or couldn't be renewed within a lease duration, so two
+ * nodes never keep migrating a schema at a same time.
+ * <p>
+ * Expected version defaults to a highest version of migrations resolved by
+ * Flyway from a configuration.
+ */
+public class ElectedSchemaMigrator {
+
+	/** Default name of a leader table */
+	public static final String DEFAULT_TABLE_NAME = "DATAFLOW_MIGRATION_LEADER";
+	private static final Logger logger = LoggerFactory.getLogger(ElectedSchemaMigrator.class);
+	private static final String LOCK_NAME = "flyway";
+	private final Configuration configuration;
+	private final JdbcTemplate jdbcTemplate;
+	private String tableName = DEFAULT_TABLE_NAME;
+	private String owner = UUID.randomUUID().toString();
+	private MigrationVersion expectedVersion;
+	private Duration lease = Duration.ofMinutes(2);
+	private Duration initialBackoff = Duration.ofMillis(500);
+	private Duration maxBackoff = Duration.ofSeconds(10);
+	private Duration timeout = Duration.ofMinutes(30);
+	private volatile long lastRenewal;
+	private volatile boolean leaseLost;
+
+	/**
+	 * Instantiates a new elected schema migrator.
+	 *
+	 * @param configuration the Flyway configuration
+	 */
+	public ElectedSchemaMigrator(Configuration configuration) {
+		Assert.notNull(configuration, "configuration must be set");
+		Assert.notNull(configuration.getDataSource(), "configuration must have a dataSource");
+		this.configuration = configuration;
+		this.jdbcTemplate = new JdbcTemplate(configuration.getDataSource());
+	}
+
+	/**
+	 * Sets the leader table name.
+	 *
+	 * @param tableName the table name
+	 */
+	public void setTableName(String tableName) {
+		Assert.hasText(tableName, "tableName must be set");
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Sets the identifier of this node, defaults to a random identifier.
+	 *
+	 * @param owner the owner identifier
+	 */
+	public void setOwner(String owner) {
+		Assert.hasText(owner, "owner must be set");
+		this.owner = owner;
+	}
+
+	/**
+	 * Sets the schema version which allows followers to skip Flyway.
+	 *
+	 * @param expectedVersion the expected version
+	 */
+	public void setExpectedVersion(String expectedVersion) {
+		Assert.hasText(expectedVersion, "expectedVersion must be set");
+		this.expectedVersion = MigrationVersion.fromVersion(expectedVersion);
+	}
+
+	/**
+	 * Sets the lease of a leader, renewed while migrations are running.
+	 *
+	 * @param lease the lease duration
+	 */
+	public void setLease(Duration lease) {
+		Assert.notNull(lease, "lease must be set");
+		this.lease = lease;
+	}
+
+	/**
+	 * Sets the backoff of followers polling a leader table.
+	 *
+	 * @param initialBackoff the initial backoff
+	 * @param maxBackoff the max backoff
+	 */
+	public void setBackoff(Duration initialBackoff, Duration maxBackoff) {
+		Assert.notNull(initialBackoff, "initialBackoff must be set");
+		Assert.notNull(maxBackoff, "maxBackoff must be set");
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	/**
+	 * Sets the max time a follower waits for a version to get reached.
+	 *
+	 * @param timeout the timeout
+	 */
+	public void setTimeout(Duration timeout) {
+		Assert.notNull(timeout, "timeout must be set");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Migrate a schema either as a leader or wait as a follower until an
+	 * expected version has been reached.
+	 *
+	 * @return true, if this node ran Flyway
+	 */
+	public boolean migrate() {
+		MigrationVersion version = getExpectedVersion();
+		initialize();
+		long deadline = System.nanoTime() + timeout.toNanos();
+		long backoff = initialBackoff.toMillis();
+		while (true) {
+			if (isReached(version)) {
+				logger.info("Schema version {} already reached, skipping Flyway", version);
+				return false;
+			}
+			if (tryAcquire()) {
+				lead(version);
+				return true;
+			}
+			if (System.nanoTime() > deadline) {
+				throw new DataFlowSchemaMigrationException(
+						"Timed out waiting for schema version " + version + " from a migration leader");
+			}
+			logger.debug("Waiting {} ms for a migration leader to reach schema version {}", backoff, version);
+			try {
+				Thread.sleep(backoff);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DataFlowSchemaMigrationException("Interrupted while waiting for a migration leader", e);
+			}
+			backoff = Math.min(backoff * 2, maxBackoff.toMillis());
+		}
+	}
+
+	private void lead(MigrationVersion version) {
+		logger.info("Elected as a migration leader as {}", owner);
+		lastRenewal = System.nanoTime();
+		leaseLost = false;
+		ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor();
+		long period = Math.max(1, lease.toMillis() / 3);
+		renewer.scheduleAtFixedRate(this::renew, period, period, TimeUnit.MILLISECONDS);
+		try {
+			List<Callback> callbacks = new ArrayList<>(Arrays.asList(configuration.getCallbacks()));
+			callbacks.add(new LeaseCallback());
+			Flyway.configure(configuration.getClassLoader()).configuration(configuration)
+					.callbacks(callbacks.toArray(new Callback[0])).load().migrate();
+			checkLease();
+			jdbcTemplate.update("UPDATE " + tableName + " SET SCHEMA_VERSION = ? WHERE LOCK_NAME = ? AND OWNER = ?",
+					version.getVersion(), LOCK_NAME, owner);
+		}
+		finally {
+			renewer.shutdownNow();
+			jdbcTemplate.update("UPDATE " + tableName + " SET OWNER = NULL, HEARTBEAT = NULL, "
+					+ "LEASE_VERSION = LEASE_VERSION + 1 WHERE LOCK_NAME = ? AND OWNER = ?", LOCK_NAME, owner);
+		}
+	}
+
+	private boolean tryAcquire() {
+		List<Lease> leases = jdbcTemplate.query("SELECT OWNER, HEARTBEAT, CURRENT_TIMESTAMP, LEASE_VERSION FROM "
+				+ tableName + " WHERE LOCK_NAME = ?", (rs, rowNum) -> new Lease(rs.getString(1), rs.getTimestamp(2),
+						rs.getTimestamp(3), rs.getLong(4)), LOCK_NAME);
+		if (leases.isEmpty()) {
+			return false;
+		}
+		Lease current = leases.get(0);
+		if (current.owner != null) {
+			if (!current.isExpired(lease)) {
+				return false;
+			}
+			logger.info("Taking over expired migration leader lease of {}", current.owner);
+		}
+		int updated = jdbcTemplate.update("UPDATE " + tableName + " SET OWNER = ?, HEARTBEAT = CURRENT_TIMESTAMP, "
+				+ "LEASE_VERSION = ? WHERE LOCK_NAME = ? AND LEASE_VERSION = ?", owner, current.version + 1, LOCK_NAME,
+				current.version);
+		return updated > 0;
+	}
+
+	private void renew() {
+		try {
+			int updated = jdbcTemplate.update("UPDATE " + tableName + " SET HEARTBEAT = CURRENT_TIMESTAMP, "
+					+ "LEASE_VERSION = LEASE_VERSION + 1 WHERE LOCK_NAME = ? AND OWNER = ?", LOCK_NAME, owner);
+			if (updated == 0) {
+				logger.warn("Migration leader lease of {} has been taken over", owner);
+				leaseLost = true;
+			}
+			else {
+				lastRenewal = System.nanoTime();
+			}
+		}
+		catch (DataAccessException e) {
+			logger.warn("Unable to renew migration leader lease", e);
+			if (System.nanoTime() - lastRenewal > lease.toNanos()) {
+				leaseLost = true;
+			}
+		}
+	}
+
+	private void checkLease() {
+		if (!leaseLost) {
+			Integer owned = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + tableName
+					+ " WHERE LOCK_NAME = ? AND OWNER = ?", Integer.class, LOCK_NAME, owner);
+			leaseLost = owned == null || owned == 0;
+		}
+		if (leaseLost) {
+			throw new DataFlowSchemaMigrationException("Lost migration leader lease of " + owner
+					+ ", aborting migrations");
+		}
+	}
+
+	private boolean isReached(MigrationVersion version) {
+		List<String> versions = jdbcTemplate.queryForList(
+				"SELECT SCHEMA_VERSION FROM " + tableName + " WHERE LOCK_NAME = ?", String.class, LOCK_NAME);
+		return !versions.isEmpty() && versions.get(0) != null
+				&& MigrationVersion.fromVersion(versions.get(0)).compareTo(version) >= 0;
+	}
+
+	private void initialize() {
+		try {
+			// sql server timestamp is a row version
+			SchemaTables.createIfAbsent(configuration.getDataSource(), tableName,
+					dialect -> "LOCK_NAME VARCHAR(64) NOT NULL PRIMARY KEY, OWNER VARCHAR(255), HEARTBEAT "
+							+ (dialect == SqlDialect.SQLSERVER ? "DATETIME2" : "TIMESTAMP")
+							+ ", LEASE_VERSION NUMERIC(19) NOT NULL, SCHEMA_VERSION VARCHAR(50)");
+		}
+		catch (DataAccessException e) {
+			// other node may have created it concurrently
+			logger.debug("Unable to create leader table", e);
+		}
+		try {
+			jdbcTemplate.update("INSERT INTO " + tableName + " (LOCK_NAME, LEASE_VERSION) VALUES (?, 0)", LOCK_NAME);
+		}
+		catch (DataIntegrityViolationException e) {
+			// row already exists
+		}
+	}
+
+	private MigrationVersion getExpectedVersion() {
+		if (expectedVersion != null) {
+			return expectedVersion;
+		}
+		MigrationVersion version = null;
+		Flyway flyway = Flyway.configure(configuration.getClassLoader()).configuration(configuration).load();
+		for (MigrationInfo info : flyway.info().all()) {
+			MigrationVersion migrationVersion = info.getVersion();
+			if (migrationVersion != null && (version == null || migrationVersion.compareTo(version) > 0)) {
+				version = migrationVersion;
+			}
+		}
+		Assert.state(version != null, "expectedVersion must be set when configuration has no versioned migrations");
+		return version;
+	}
+
+	/**
+	 * Callback checking a lease of a leader before each migration.
+	 */
+	private class LeaseCallback implements Callback {
+
+		@Override
+		public boolean supports(Event event, Context context) {
+			return event == Event.BEFORE_EACH_MIGRATE;
+		}
+
+		@Override
+		public boolean canHandleInTransaction(Event event, Context context) {
+			return true;
+		}
+
+		@Override
+		public void handle(Event event, Context context) {
+			checkLease();
+		}
+	}
+
+	private static class Lease {
+
+		private final String owner;
+		private final Timestamp heartbeat;
+		private final Timestamp now;
+		private final long version;
+
+		Lease(String owner, Timestamp heartbeat, Timestamp now, long version) {
+			this.owner = owner;
+			this.heartbeat = heartbeat;
+			this.now = now;
+			this.version = version;
+		}
+
+		boolean isExpired(Duration lease) {
+			// both timestamps come from a database clock
+			return heartbeat == null || now == null || now.getTime() - heartbeat.getTime() > lease.toMillis();
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.migration.JavaMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Opt-in fast path skipping Flyway entirely, including validation and
+ * callbacks, when a fingerprint of available java migrations and callback
+ * commands matches a fingerprint stored after a last successful migration.
+ * Commands of migrations are resolved for a dialect of a database and scripts
+ * of script migrations are hashed by their content. Commands of a
+ * {@link RefreshStatisticsCallback} depend on tables changed by a current run
+ * and are left out.
+ * <p>
+ * Fingerprint covers only migrations and callbacks registered as instances in
+ * a configuration, like ones registered by {@link IndexedMigrationsConfigurer},
+ * thus changes in sql migrations found from locations are not detected.
+ */
+public class FingerprintSchemaMigrator {
+
+	/** Default name of a fingerprint table */
+	public static final String DEFAULT_TABLE_NAME = "DATAFLOW_SCHEMA_FINGERPRINT";
+	private static final Logger logger = LoggerFactory.getLogger(FingerprintSchemaMigrator.class);
+	private final Configuration configuration;
+	private final JdbcTemplate jdbcTemplate;
+	private String tableName = DEFAULT_TABLE_NAME;
+
+	/**
+	 * Instantiates a new fingerprint schema migrator.
+	 *
+	 * @param configuration the Flyway configuration
+	 */
+	public FingerprintSchemaMigrator(Configuration configuration) {
+		Assert.notNull(configuration, "configuration must be set");
+		Assert.notNull(configuration.getDataSource(), "configuration must have a dataSource");
+		this.configuration = configuration;
+		this.jdbcTemplate = new JdbcTemplate(configuration.getDataSource());
+	}
+
+	/**
+	 * Sets the fingerprint table name.
+	 *
+	 * @param tableName the table name
+	 */
+	public void setTableName(String tableName) {
+		Assert.hasText(tableName, "tableName must be set");
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Migrate a schema unless a stored fingerprint matches.
+	 *
+	 * @return true, if Flyway was run
+	 */
+	public boolean migrate() {
+		if (!configuration.isSkipDefaultResolvers()) {
+			logger.warn("Default resolvers are enabled, changes in sql migrations are not fingerprinted");
+		}
+		String fingerprint = getFingerprint();
+		String name = configuration.getTable();
+		initialize();
+		List<String> stored = jdbcTemplate.queryForList(
+				"SELECT FINGERPRINT FROM " + tableName + " WHERE FINGERPRINT_NAME = ?", String.class, name);
+		if (!stored.isEmpty() && fingerprint.equals(stored.get(0))) {
+			logger.info("Schema fingerprint {} unchanged, skipping Flyway", fingerprint);
+			return false;
+		}
+		Flyway.configure(configuration.getClassLoader()).configuration(configuration).load().migrate();
+		int updated = jdbcTemplate.update("UPDATE " + tableName + " SET FINGERPRINT = ? WHERE FINGERPRINT_NAME = ?",
+				fingerprint, name);
+		if (updated == 0) {
+			jdbcTemplate.update("INSERT INTO " + tableName + " (FINGERPRINT_NAME, FINGERPRINT) VALUES (?, ?)", name,
+					fingerprint);
+		}
+		logger.info("Stored schema fingerprint {}", fingerprint);
+		return true;
+	}
+
+	/**
+	 * Gets a fingerprint of migrations and callback commands of a
+	 * configuration.
+	 *
+	 * @return the hex encoded fingerprint
+	 */
+	public String getFingerprint() {
+		MessageDigest digest = Digests.sha256();
+		List<JavaMigration> migrations = new ArrayList<>();
+		for (JavaMigration migration : configuration.getJavaMigrations()) {
+			migrations.add(migration);
+		}
+		migrations.sort(Comparator.comparing(migration -> migration.getClass().getName()));
+		List<Callback> callbacks = new ArrayList<>();
+		for (Callback callback : configuration.getCallbacks()) {
+			callbacks.add(callback);
+		}
+		callbacks.sort(Comparator.comparing(callback -> callback.getClass().getName()));
+		try (Connection connection = configuration.getDataSource().getConnection()) {
+			SqlDialect dialect = SqlDialect.fromDataSource(configuration.getDataSource(), connection);
+			for (JavaMigration migration : migrations) {
+				update(digest, migration.getClass().getName());
+				update(digest, String.valueOf(migration.getVersion()));
+				update(digest, migration.getDescription());
+				update(digest, String.valueOf(migration.getChecksum()));
+				if (migration instanceof AbstractScriptMigration) {
+					update(digest, ((AbstractScriptMigration) migration).getScript());
+				}
+				else if (migration instanceof AbstractMigration) {
+					update(digest, ((AbstractMigration) migration).getCommands(dialect));
+				}
+			}
+			// resolve commands like Flyway does, as callbacks may override how
+			Context context = FlywayContexts.callbackContext(configuration, connection);
+			for (Callback callback : callbacks) {
+				update(digest, callback.getClass().getName());
+				if (callback instanceof AbstractCallback) {
+					AbstractCallback abstractCallback = (AbstractCallback) callback;
+					update(digest, String.valueOf(abstractCallback.getEvent()));
+					if (!(callback instanceof RefreshStatisticsCallback)) {
+						update(digest, abstractCallback.getCommands(abstractCallback.getEvent(), context));
+					}
+				}
+			}
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to resolve migration and callback commands", e);
+		}
+		return Digests.toHex(digest.digest());
+	}
+
+	private void initialize() {
+		SchemaTables.createIfAbsent(configuration.getDataSource(), tableName,
+				dialect -> "FINGERPRINT_NAME VARCHAR(255) NOT NULL PRIMARY KEY, FINGERPRINT VARCHAR(64) NOT NULL");
+	}
+
+	private static void update(MessageDigest digest, List<SqlCommand> commands) {
+		if (commands != null) {
+			for (SqlCommand command : commands) {
+				update(digest, command.getClass().getName());
+				update(digest, command.getCommand());
+				update(digest, String.valueOf(command.getSuppressedErrorCodes()));
+			}
+		}
+	}
+
+	private static void update(MessageDigest digest, Resource script) {
+		byte[] buffer = new byte[8192];
+		try (InputStream stream = script.getInputStream()) {
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		catch (IOException e) {
+			throw new DataFlowSchemaMigrationException("Unable to read script " + script, e);
+		}
+		digest.update((byte) 0);
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		if (value != null) {
+			digest.update(value.getBytes(StandardCharsets.UTF_8));
+		}
+		// separator keeps adjacent values from running together
+		digest.update((byte) 0);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+import org.flywaydb.core.api.configuration.Configuration;
+
+/**
+ * Utility methods creating Flyway callback and migration contexts outside of
+ * Flyway, so that commands of migrations and callbacks can be resolved the
+ * same way Flyway would resolve those. Contexts only provide a configuration
+ * and a connection, other methods return {@code null}.
+ */
+final class FlywayContexts {
+
+	private FlywayContexts() {
+	}
+
+	/**
+	 * Create a callback context.
+	 *
+	 * @param configuration the Flyway configuration
+	 * @param connection the connection
+	 * @return the callback context
+	 */
+	static org.flywaydb.core.api.callback.Context callbackContext(Configuration configuration,
+			Connection connection) {
+		return proxy(org.flywaydb.core.api.callback.Context.class, configuration, connection);
+	}
+
+	/**
+	 * Create a java migration context.
+	 *
+	 * @param configuration the Flyway configuration
+	 * @param connection the connection
+	 * @return the migration context
+	 */
+	static org.flywaydb.core.api.migration.Context migrationContext(Configuration configuration,
+			Connection connection) {
+		return proxy(org.flywaydb.core.api.migration.Context.class, configuration, connection);
+	}
+
+	private static <T> T proxy(Class<T> type, Configuration configuration, Connection connection) {
+		return type.cast(Proxy.newProxyInstance(FlywayContexts.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getConfiguration":
+							return configuration;
+						case "getConnection":
+							return connection;
+						case "equals":
+							return proxy == args[0];
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "toString":
+							return type.getName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+						default:
+							return null;
+					}
+				}));
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.flywaydb.core.api.Location;
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.flywaydb.core.api.migration.JavaMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Registers migrations and callbacks listed in indexes written by an
+ * annotation processor from {@code spring-cloud-dataflow-common-flyway-indexer}
+ * directly into a Flyway configuration, so that Flyway doesn't need to scan a
+ * classpath. Indexed classes need a public no-argument constructor.
+ * <p>
+ * Default resolvers and callbacks of Flyway also resolve sql migrations and
+ * sql callbacks, thus indexes are only used when none of them records sql
+ * migrations at build time and no filesystem locations are configured. In that
+ * case default resolvers and callbacks are disabled and locations are cleared
+ * so that Flyway doesn't scan those either, and a warning is logged for
+ * locations without indexed classes as java migrations in them would not be
+ * applied. Otherwise a configuration is left untouched and Flyway scans
+ * locations for both sql and java migrations as usual.
+ */
+public final class IndexedMigrationsConfigurer {
+
+	/** Location of an index resource */
+	public static final String INDEX_LOCATION = "META-INF/spring-cloud-dataflow-migrations.idx";
+	/** Index entry recording that a module has sql migrations */
+	public static final String SQL_MIGRATIONS_ENTRY = "@sql-migrations";
+	private static final Logger logger = LoggerFactory.getLogger(IndexedMigrationsConfigurer.class);
+
+	private IndexedMigrationsConfigurer() {
+	}
+
+	/**
+	 * Configure indexed migrations and callbacks into a configuration. If
+	 * there are no indexes, indexes record sql migrations or filesystem
+	 * locations are configured a configuration is left untouched.
+	 *
+	 * @param configuration the Flyway configuration
+	 * @return true, if indexes were found and configured
+	 */
+	public static boolean configure(FluentConfiguration configuration) {
+		ClassLoader classLoader = configuration.getClassLoader();
+		Set<String> classNames = readIndexes(classLoader);
+		boolean sqlMigrations = classNames.remove(SQL_MIGRATIONS_ENTRY);
+		if (classNames.isEmpty()) {
+			logger.debug("No migration indexes found, using classpath scanning");
+			return false;
+		}
+		if (sqlMigrations) {
+			logger.info("Migration indexes record sql migrations, using classpath scanning instead of indexes");
+			return false;
+		}
+		for (Location location : configuration.getLocations()) {
+			if (location.isFileSystem()) {
+				logger.info("Filesystem location {} is not indexed, using classpath scanning instead of indexes",
+						location);
+				return false;
+			}
+		}
+		warnUnindexedLocations(configuration.getLocations(), classNames);
+		List<JavaMigration> migrations = new ArrayList<>(Arrays.asList(configuration.getJavaMigrations()));
+		List<Callback> callbacks = new ArrayList<>(Arrays.asList(configuration.getCallbacks()));
+		for (String className : classNames) {
+			Object instance = BeanUtils.instantiateClass(ClassUtils.resolveClassName(className, classLoader));
+			if (instance instanceof JavaMigration) {
+				migrations.add((JavaMigration) instance);
+			}
+			else if (instance instanceof Callback) {
+				callbacks.add((Callback) instance);
+			}
+		}
+		configuration.javaMigrations(migrations.toArray(new JavaMigration[0]))
+				.callbacks(callbacks.toArray(new Callback[0]))
+				.skipDefaultResolvers(true)
+				.skipDefaultCallbacks(true)
+				.locations(new String[0]);
+		logger.info("Configured {} indexed migrations and {} indexed callbacks", migrations.size(),
+				callbacks.size());
+		return true;
+	}
+
+	private static void warnUnindexedLocations(Location[] locations, Set<String> classNames) {
+		for (Location location : locations) {
+			String packageName = location.getPath().replace('/', '.');
+			if (classNames.stream().noneMatch(className -> className.startsWith(packageName + "."))) {
+				logger.warn("No indexed classes in location {}, java migrations and callbacks in it which are not "
+						+ "listed in migration indexes are not applied", location);
+			}
+		}
+	}
+
+	private static Set<String> readIndexes(ClassLoader classLoader) {
+		Set<String> classNames = new LinkedHashSet<>();
+		try {
+			Enumeration<URL> urls = classLoader.getResources(INDEX_LOCATION);
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						line = line.trim();
+						if (StringUtils.hasText(line) && !line.startsWith("#")) {
+							classNames.add(line);
+						}
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new DataFlowSchemaMigrationException("Unable to read migration indexes", e);
+		}
+		return classNames;
+	}
+}
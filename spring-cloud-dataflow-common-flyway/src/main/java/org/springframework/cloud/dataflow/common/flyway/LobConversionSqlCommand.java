@@ -0,0 +1,271 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Command copying a LOB column into another column of a same table by
+ * streaming values through JDBC {@link Reader} and {@link InputStream}
+ * instead of materializing a whole table with {@code INSERT ... SELECT} or
+ * {@code UPDATE ... SET}. Rows are processed in primary key chunks and values
+ * are written with batched updates. Values which fit into a max in-memory size
+ * are buffered into a batch until a batch size or a buffer budget is reached,
+ * larger values are streamed into their own update.
+ */
+public class LobConversionSqlCommand extends AbstractChunkedSqlCommand {
+
+	/**
+	 * Conversion modes of a source column into a target column.
+	 */
+	public enum Mode {
+
+		/**
+		 * Character column into a character column.
+		 */
+		CHARACTER,
+
+		/**
+		 * Binary column into a binary column.
+		 */
+		BINARY,
+
+		/**
+		 * Binary column into a character column decoded with a charset.
+		 */
+		BINARY_TO_CHARACTER;
+	}
+
+	private final String sourceColumn;
+	private final String targetColumn;
+	private final Mode mode;
+	private Charset charset = StandardCharsets.UTF_8;
+	private int batchSize = 100;
+	private int maxInMemorySize = 64 * 1024;
+	private long bufferBudget = 4 * 1024 * 1024;
+
+	/**
+	 * Instantiates a new lob conversion sql command.
+	 *
+	 * @param tableName the table name
+	 * @param keyColumn the numeric key column
+	 * @param sourceColumn the source lob column
+	 * @param targetColumn the target column
+	 * @param mode the conversion mode
+	 * @param chunkSize the size of a key range in a chunk
+	 */
+	public LobConversionSqlCommand(String tableName, String keyColumn, String sourceColumn, String targetColumn,
+			Mode mode, long chunkSize) {
+		super("UPDATE " + tableName + " SET " + targetColumn + " = " + sourceColumn, tableName, keyColumn, null,
+				chunkSize);
+		Assert.hasText(sourceColumn, "sourceColumn must be set");
+		Assert.hasText(targetColumn, "targetColumn must be set");
+		Assert.notNull(mode, "mode must be set");
+		this.sourceColumn = sourceColumn;
+		this.targetColumn = targetColumn;
+		this.mode = mode;
+	}
+
+	/**
+	 * Sets the charset used to decode binary values, defaults to UTF-8.
+	 *
+	 * @param charset the charset
+	 */
+	public void setCharset(Charset charset) {
+		Assert.notNull(charset, "charset must be set");
+		this.charset = charset;
+	}
+
+	/**
+	 * Sets the max number of updates in a batch.
+	 *
+	 * @param batchSize the batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the max size of a value in characters or bytes buffered into a
+	 * batch. Larger values are streamed into their own update.
+	 *
+	 * @param maxInMemorySize the max in-memory size
+	 */
+	public void setMaxInMemorySize(int maxInMemorySize) {
+		Assert.isTrue(maxInMemorySize > 0, "maxInMemorySize must be positive");
+		this.maxInMemorySize = maxInMemorySize;
+	}
+
+	/**
+	 * Sets the total size of buffered values in a batch in characters or
+	 * bytes after which a batch is executed.
+	 *
+	 * @param bufferBudget the buffer budget
+	 */
+	public void setBufferBudget(long bufferBudget) {
+		Assert.isTrue(bufferBudget > 0, "bufferBudget must be positive");
+		this.bufferBudget = bufferBudget;
+	}
+
+	@Override
+	protected int handleChunk(JdbcTemplate jdbcTemplate, Connection connection, long from, long to) {
+		Integer rows = jdbcTemplate.execute((ConnectionCallback<Integer>) con -> {
+			try {
+				return convert(con, from, to);
+			}
+			catch (IOException e) {
+				throw new DataFlowSchemaMigrationException("Unable to stream " + sourceColumn + " of "
+						+ getTableName(), e);
+			}
+		});
+		return rows != null ? rows : 0;
+	}
+
+	private int convert(Connection connection, long from, long to) throws SQLException, IOException {
+		String select = "SELECT " + getKeyColumn() + ", " + sourceColumn + " FROM " + getTableName() + " WHERE "
+				+ getChunkWhereClause();
+		String update = "UPDATE " + getTableName() + " SET " + targetColumn + " = ? WHERE " + getKeyColumn()
+				+ " = ?";
+		int rows = 0;
+		int pending = 0;
+		long buffered = 0;
+		try (PreparedStatement ps = connection.prepareStatement(select, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY); PreparedStatement batch = connection.prepareStatement(update);
+				PreparedStatement single = connection.prepareStatement(update)) {
+			ps.setFetchSize(batchSize);
+			ps.setLong(1, from);
+			ps.setLong(2, to);
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) {
+					long key = rs.getLong(1);
+					Object value = readValue(rs);
+					rows++;
+					if (value instanceof String || value instanceof byte[] || value == null) {
+						setValue(batch, value);
+						batch.setLong(2, key);
+						batch.addBatch();
+						buffered += value instanceof String ? ((String) value).length()
+								: value instanceof byte[] ? ((byte[]) value).length : 0;
+						if (++pending >= batchSize || buffered >= bufferBudget) {
+							batch.executeBatch();
+							pending = 0;
+							buffered = 0;
+						}
+					}
+					else {
+						// large value is streamed directly from a source into its own update
+						setValue(single, value);
+						single.setLong(2, key);
+						single.executeUpdate();
+					}
+				}
+			}
+			if (pending > 0) {
+				batch.executeBatch();
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Read a value as a {@link String} or {@code byte[]} if it fits into a max
+	 * in-memory size, otherwise as a {@link Reader} or {@link InputStream}
+	 * positioned at a start of a value.
+	 */
+	private Object readValue(ResultSet rs) throws SQLException, IOException {
+		if (mode == Mode.CHARACTER) {
+			Reader reader = rs.getCharacterStream(2);
+			return reader != null ? readCharacters(reader) : null;
+		}
+		InputStream stream = rs.getBinaryStream(2);
+		if (stream == null) {
+			return null;
+		}
+		if (mode == Mode.BINARY_TO_CHARACTER) {
+			return readCharacters(new InputStreamReader(stream, charset));
+		}
+		PushbackInputStream pushback = new PushbackInputStream(stream, maxInMemorySize + 1);
+		byte[] buffer = new byte[maxInMemorySize + 1];
+		int length = readFully(pushback, buffer);
+		if (length <= maxInMemorySize) {
+			byte[] value = new byte[length];
+			System.arraycopy(buffer, 0, value, 0, length);
+			return value;
+		}
+		pushback.unread(buffer, 0, length);
+		return pushback;
+	}
+
+	private Object readCharacters(Reader reader) throws IOException {
+		PushbackReader pushback = new PushbackReader(reader, maxInMemorySize + 1);
+		char[] buffer = new char[maxInMemorySize + 1];
+		int length = 0;
+		int read;
+		while (length < buffer.length && (read = pushback.read(buffer, length, buffer.length - length)) != -1) {
+			length += read;
+		}
+		if (length <= maxInMemorySize) {
+			return new String(buffer, 0, length);
+		}
+		pushback.unread(buffer, 0, length);
+		return pushback;
+	}
+
+	private void setValue(PreparedStatement ps, Object value) throws SQLException {
+		boolean character = mode != Mode.BINARY;
+		if (value == null) {
+			ps.setNull(1, character ? Types.VARCHAR : Types.VARBINARY);
+		}
+		else if (value instanceof String) {
+			ps.setString(1, (String) value);
+		}
+		else if (value instanceof byte[]) {
+			ps.setBytes(1, (byte[]) value);
+		}
+		else if (value instanceof Reader) {
+			ps.setCharacterStream(1, (Reader) value);
+		}
+		else {
+			ps.setBinaryStream(1, (InputStream) value);
+		}
+	}
+
+	private static int readFully(InputStream stream, byte[] buffer) throws IOException {
+		int length = 0;
+		int read;
+		while (length < buffer.length && (read = stream.read(buffer, length, buffer.length - length)) != -1) {
+			length += read;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+
+/**
+ * Command guarding its execution with a dialect specific lock timeout and an
+ * optional statement timeout so that a statement waiting for a lock doesn't
+ * block other sessions queued behind it. Lock timeouts and deadlocks are
+ * retried with a jittered exponential backoff up to a maximum number of
+ * attempts. Within a transaction retries are only possible with savepoint
+ * support.
+ */
+public class LockTimeoutSqlCommand extends SqlCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(LockTimeoutSqlCommand.class);
+	private final Duration lockTimeout;
+	private final Duration statementTimeout;
+	private int maxAttempts = 5;
+	private Duration initialBackoff = Duration.ofSeconds(1);
+	private Duration maxBackoff = Duration.ofSeconds(30);
+
+	/**
+	 * Instantiates a new lock timeout sql command.
+	 *
+	 * @param command the command
+	 * @param lockTimeout the lock timeout
+	 */
+	public LockTimeoutSqlCommand(String command, Duration lockTimeout) {
+		this(command, null, lockTimeout, null);
+	}
+
+	/**
+	 * Instantiates a new lock timeout sql command.
+	 *
+	 * @param command the command
+	 * @param suppressedErrorCodes the suppressed error codes, may be {@code null}
+	 * @param lockTimeout the lock timeout
+	 * @param statementTimeout the statement timeout, may be {@code null}
+	 */
+	public LockTimeoutSqlCommand(String command, List<Integer> suppressedErrorCodes, Duration lockTimeout,
+			Duration statementTimeout) {
+		super(command, suppressedErrorCodes);
+		Assert.notNull(lockTimeout, "lockTimeout must be set");
+		this.lockTimeout = lockTimeout;
+		this.statementTimeout = statementTimeout;
+	}
+
+	/**
+	 * Sets the maximum number of attempts. Defaults to 5.
+	 *
+	 * @param maxAttempts the maximum number of attempts
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		Assert.isTrue(maxAttempts > 0, "maxAttempts must be positive");
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets the backoff between attempts. Backoff is doubled with every attempt
+	 * up to a maximum and randomized between its half and full value.
+	 *
+	 * @param initialBackoff the initial backoff
+	 * @param maxBackoff the maximum backoff
+	 */
+	public void setBackoff(Duration initialBackoff, Duration maxBackoff) {
+		Assert.notNull(initialBackoff, "initialBackoff must be set");
+		Assert.notNull(maxBackoff, "maxBackoff must be set");
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+	}
+
+	@Override
+	public boolean canHandleInJdbcTemplate() {
+		return true;
+	}
+
+	@Override
+	public void handle(JdbcTemplate jdbcTemplate, Connection connection) {
+		SqlDialect dialect = SqlDialect.fromConnection(connection);
+		SuppressSQLErrorCodesTranslator translator = getTranslator(connection);
+		for (int attempt = 1; ; attempt++) {
+			Savepoint savepoint = null;
+			try {
+				savepoint = createSavepoint(connection);
+				execute(connection, dialect);
+				if (savepoint != null) {
+					connection.releaseSavepoint(savepoint);
+				}
+				return;
+			}
+			catch (SQLException e) {
+				boolean recovered = savepoint == null ? isAutoCommit(connection) : rollback(connection, savepoint);
+				if (translator.isSuppressed(e.getErrorCode())) {
+					logger.debug("Suppressing error {}", e);
+					return;
+				}
+				if (!recovered || attempt >= maxAttempts || !isRetryable(dialect, e)) {
+					throw translate(translator, e);
+				}
+				long delay = backoff(attempt);
+				logger.warn("Command failed to get a lock on attempt {}/{}, retrying in {} ms: {}", attempt,
+						maxAttempts, delay, getCommand());
+				sleep(delay);
+			}
+		}
+	}
+
+	private void execute(Connection connection, SqlDialect dialect) throws SQLException {
+		Statement statement = connection.createStatement();
+		String restore = null;
+		try {
+			restore = applyLockTimeout(statement, dialect, isAutoCommit(connection));
+			if (statementTimeout != null) {
+				statement.setQueryTimeout((int) Math.max(1, statementTimeout.getSeconds()));
+			}
+			logger.debug("Executing command {}", getCommand());
+			statement.execute(getCommand());
+		}
+		finally {
+			if (restore != null) {
+				try {
+					statement.setQueryTimeout(0);
+					statement.execute(restore);
+				}
+				catch (SQLException e) {
+					logger.debug("Unable to restore lock timeout", e);
+				}
+			}
+			JdbcUtils.closeStatement(statement);
+		}
+	}
+
+	/**
+	 * Apply a lock timeout and return a statement restoring previous value.
+	 */
+	private String applyLockTimeout(Statement statement, SqlDialect dialect, boolean autoCommit)
+			throws SQLException {
+		long millis = lockTimeout.toMillis();
+		long seconds = Math.max(1, lockTimeout.getSeconds());
+		switch (dialect) {
+			case POSTGRESQL:
+				// local value is restored for remaining statements of a transaction and
+				// reverted by a rollback to a savepoint if a statement fails
+				String scope = autoCommit ? "" : "LOCAL ";
+				String previous = queryValue(statement, "SHOW lock_timeout");
+				statement.execute("SET " + scope + "lock_timeout = '" + millis + "ms'");
+				return "SET " + scope + "lock_timeout = '" + previous + "'";
+			case MYSQL:
+			case MARIADB:
+				String previousWait = queryValue(statement, "SELECT @@SESSION.lock_wait_timeout");
+				statement.execute("SET SESSION lock_wait_timeout = " + seconds);
+				return "SET SESSION lock_wait_timeout = " + previousWait;
+			case SQLSERVER:
+				String previousLock = queryValue(statement, "SELECT @@LOCK_TIMEOUT");
+				statement.execute("SET LOCK_TIMEOUT " + millis);
+				return "SET LOCK_TIMEOUT " + previousLock;
+			case ORACLE:
+				statement.execute("ALTER SESSION SET DDL_LOCK_TIMEOUT = " + seconds);
+				return "ALTER SESSION SET DDL_LOCK_TIMEOUT = 0";
+			default:
+				return null;
+		}
+	}
+
+	private static String queryValue(Statement statement, String sql) throws SQLException {
+		try (ResultSet rs = statement.executeQuery(sql)) {
+			rs.next();
+			return rs.getString(1);
+		}
+	}
+
+	/**
+	 * Checks if an error is a lock timeout or a deadlock based on sql state
+	 * classes and vendor codes.
+	 *
+	 * @param dialect the sql dialect
+	 * @param e the sql exception
+	 * @return true, if error can be retried
+	 */
+	protected boolean isRetryable(SqlDialect dialect, SQLException e) {
+		String state = e.getSQLState();
+		// transaction rollback class covers serialization failures and deadlocks
+		if (state != null && (state.startsWith("40") || state.equals("55P03"))) {
+			return true;
+		}
+		int code = e.getErrorCode();
+		switch (dialect) {
+			case MYSQL:
+			case MARIADB:
+				return code == 1205 || code == 1213;
+			case ORACLE:
+				return code == 54 || code == 60 || code == 30006 || code == 4021;
+			case SQLSERVER:
+				return code == 1222 || code == 1205;
+			default:
+				return false;
+		}
+	}
+
+	private long backoff(int attempt) {
+		long delay = initialBackoff.toMillis() << Math.min(attempt - 1, 20);
+		delay = Math.min(Math.max(delay, 1), maxBackoff.toMillis());
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataFlowSchemaMigrationException("Interrupted while waiting to retry", e);
+		}
+	}
+
+	private SuppressSQLErrorCodesTranslator getTranslator(Connection connection) {
+		String productName = null;
+		try {
+			productName = connection.getMetaData().getDatabaseProductName();
+		}
+		catch (SQLException ex) {
+			logger.debug("Unable to resolve database product name", ex);
+		}
+		List<Integer> suppressedErrorCodes = getSuppressedErrorCodes();
+		return SuppressSQLErrorCodesTranslatorRegistry.getInstance().getTranslator(productName,
+				suppressedErrorCodes != null ? suppressedErrorCodes : Collections.<Integer>emptyList());
+	}
+
+	private DataAccessException translate(SuppressSQLErrorCodesTranslator translator, SQLException e) {
+		DataAccessException dae = translator.translate("LockTimeoutSqlCommand", getCommand(), e);
+		return dae != null ? dae : new UncategorizedSQLException("LockTimeoutSqlCommand", getCommand(), e);
+	}
+
+	private static Savepoint createSavepoint(Connection connection) throws SQLException {
+		if (!connection.getAutoCommit() && connection.getMetaData().supportsSavepoints()) {
+			return connection.setSavepoint();
+		}
+		return null;
+	}
+
+	private static boolean rollback(Connection connection, Savepoint savepoint) {
+		try {
+			connection.rollback(savepoint);
+			return true;
+		}
+		catch (SQLException e) {
+			logger.debug("Unable to rollback savepoint", e);
+			return false;
+		}
+	}
+
+	private static boolean isAutoCommit(Connection connection) {
+		try {
+			return connection.getAutoCommit();
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+}
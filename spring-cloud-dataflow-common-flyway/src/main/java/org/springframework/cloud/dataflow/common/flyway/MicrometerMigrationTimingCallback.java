@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.time.Duration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link MigrationTimingCallback} publishing phase and migration timings
+ * into a Micrometer {@link MeterRegistry}.
+ */
+public class MicrometerMigrationTimingCallback extends MigrationTimingCallback {
+
+	/** Name of a timer for Flyway phase durations */
+	public static final String PHASE_TIMER = "dataflow.migration.phase";
+	/** Name of a timer for applied migration durations */
+	public static final String MIGRATION_TIMER = "dataflow.migration.migration";
+	private final MeterRegistry meterRegistry;
+
+	/**
+	 * Instantiates a new micrometer migration timing callback.
+	 *
+	 * @param meterRegistry the meter registry
+	 */
+	public MicrometerMigrationTimingCallback(MeterRegistry meterRegistry) {
+		Assert.notNull(meterRegistry, "meterRegistry must be set");
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	protected void phaseCompleted(String phase, Duration duration, boolean success) {
+		Timer.builder(PHASE_TIMER)
+				.description("Duration of Flyway phases")
+				.tag("phase", phase)
+				.tag("success", String.valueOf(success))
+				.register(meterRegistry)
+				.record(duration);
+	}
+
+	@Override
+	protected void migrationCompleted(String migration, Duration duration, boolean success) {
+		Timer.builder(MIGRATION_TIMER)
+				.description("Duration of applied Flyway migrations")
+				.tag("name", migration)
+				.tag("success", String.valueOf(success))
+				.register(meterRegistry)
+				.record(duration);
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link SqlCommandListener} publishing command timings and update counts
+ * into a Micrometer {@link MeterRegistry}. Meters are tagged with an
+ * execution id, meaning a migration or a callback, and whether an error was
+ * suppressed.
+ */
+public class MicrometerSqlCommandListener implements SqlCommandListener {
+
+	/** Name of a timer for command durations */
+	public static final String COMMAND_TIMER = "dataflow.migration.command";
+	/** Name of a distribution summary for command update counts */
+	public static final String COMMAND_ROWS = "dataflow.migration.command.rows";
+	private static final String UNKNOWN = "unknown";
+	private final MeterRegistry meterRegistry;
+
+	/**
+	 * Instantiates a new micrometer sql command listener.
+	 *
+	 * @param meterRegistry the meter registry
+	 */
+	public MicrometerSqlCommandListener(MeterRegistry meterRegistry) {
+		Assert.notNull(meterRegistry, "meterRegistry must be set");
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	public void executed(SqlCommandEvent event) {
+		String name = event.getExecutionId() != null ? event.getExecutionId() : UNKNOWN;
+		Timer.builder(COMMAND_TIMER)
+				.description("Duration of executed migration sql commands")
+				.tag("name", name)
+				.tag("suppressed", String.valueOf(event.isSuppressed()))
+				.register(meterRegistry)
+				.record(event.getDuration());
+		if (event.getUpdateCount() >= 0) {
+			DistributionSummary.builder(COMMAND_ROWS)
+					.description("Rows affected by executed migration sql commands")
+					.tag("name", name)
+					.register(meterRegistry)
+					.record(event.getUpdateCount());
+		}
+	}
+}
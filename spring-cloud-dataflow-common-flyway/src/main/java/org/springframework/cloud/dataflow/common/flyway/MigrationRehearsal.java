@@ -0,0 +1,435 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongFunction;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.callback.Event;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.util.Assert;
+
+/**
+ * Rehearses command lists of migrations and callbacks against an embedded
+ * database instead of a real one, producing a report of per command timings
+ * and tables each command locks. Tables can be seeded with row counts scaled
+ * down from production statistics, in which case reported timings of
+ * commands changing seeded tables are extrapolated back with a same scale
+ * into a forecast. Timings of other commands are reported as measured.
+ * <p>
+ * Migrations and callbacks resolve their commands the same way those would
+ * under Flyway. Migrations which don't execute a plain command list, like
+ * {@link AbstractTransformMigration}, are executed as a whole and reported
+ * as a single timing. A {@link BatchSqlCommand} reads its rows anew on every
+ * execution, so rehearsing it doesn't consume rows of a later migration.
+ * <p>
+ * Timings on an embedded database are only indicative, they are mostly useful
+ * for finding commands whose duration grows with a table size and for
+ * comparing commands with each other.
+ */
+public class MigrationRehearsal implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(MigrationRehearsal.class);
+	private final DataSource dataSource;
+	private final Configuration configuration;
+	private final List<CommandTiming> timings = Collections.synchronizedList(new ArrayList<>());
+	private final Set<String> seededTables = Collections.synchronizedSet(new HashSet<>());
+	private double scale = 1.0;
+
+	/**
+	 * Instantiates a new migration rehearsal.
+	 *
+	 * @param dataSource the embedded data source
+	 */
+	public MigrationRehearsal(DataSource dataSource) {
+		Assert.notNull(dataSource, "dataSource must be set");
+		this.dataSource = dataSource;
+		this.configuration = Flyway.configure().dataSource(dataSource);
+	}
+
+	/**
+	 * Creates a migration rehearsal with a new embedded database which is
+	 * shut down when a rehearsal is closed. Database driver needs to be on a
+	 * classpath.
+	 *
+	 * @param type the embedded database type, either H2 or HSQL
+	 * @return the migration rehearsal
+	 */
+	public static MigrationRehearsal embedded(EmbeddedDatabaseType type) {
+		Assert.notNull(type, "type must be set");
+		return new MigrationRehearsal(new EmbeddedDatabaseBuilder()
+				.setType(type)
+				.setName("rehearsal-" + UUID.randomUUID())
+				.build());
+	}
+
+	/**
+	 * Sets the scale of seeded row counts compared to production row counts.
+	 *
+	 * @param scale the scale, between 0 and 1
+	 */
+	public void setScale(double scale) {
+		Assert.isTrue(scale > 0 && scale <= 1, "scale must be between 0 and 1");
+		this.scale = scale;
+	}
+
+	/**
+	 * Seeds a table with a scaled number of rows generated for row numbers
+	 * starting from 1. Tables need to exist, which is typically done by
+	 * rehearsing schema commands first.
+	 *
+	 * @param insertSql the parameterized insert sql
+	 * @param productionRows the row count of a table in production
+	 * @param rowValues the function generating bind values for a row number
+	 */
+	public void seed(String insertSql, long productionRows, LongFunction<Object[]> rowValues) {
+		Assert.hasText(insertSql, "insertSql must be set");
+		Assert.notNull(rowValues, "rowValues must be set");
+		long rows = Math.max(1, Math.round(productionRows * scale));
+		Iterable<Object[]> values = () -> new Iterator<Object[]>() {
+
+			private long row = 1;
+
+			@Override
+			public boolean hasNext() {
+				return row <= rows;
+			}
+
+			@Override
+			public Object[] next() {
+				return rowValues.apply(row++);
+			}
+		};
+		BatchSqlCommand command = new BatchSqlCommand(insertSql, values, 1000);
+		try (Connection connection = dataSource.getConnection()) {
+			command.handle(new JdbcTemplate(new SingleConnectionDataSource(connection, true)), connection);
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to seed with " + insertSql, e);
+		}
+		for (String table : SqlTables.changedTables(command)) {
+			seededTables.add(table.toUpperCase(Locale.ROOT));
+		}
+		logger.info("Seeded {} rows with {}", rows, insertSql);
+	}
+
+	/**
+	 * Rehearse commands of a migration.
+	 *
+	 * @param migration the migration
+	 */
+	public void rehearse(AbstractMigration migration) {
+		Assert.notNull(migration, "migration must be set");
+		String executionId = migration.getClass().getName();
+		try (Connection connection = dataSource.getConnection()) {
+			if (migration instanceof AbstractScriptMigration) {
+				try (SqlScriptTokenizer commands = SqlScriptTokenizer.from(
+						((AbstractScriptMigration) migration).getScript(), SqlDialect.fromConnection(connection))) {
+					rehearse(executionId, connection, commands);
+				}
+			}
+			else if (overridesMigrate(migration)) {
+				logger.warn("Migration {} doesn't execute a plain command list, rehearsing it as a whole",
+						executionId);
+				rehearseWhole(executionId, migration, connection);
+			}
+			else {
+				rehearse(executionId, connection, migration
+						.getCommands(SqlDialect.fromDataSource(dataSource, connection)).iterator());
+			}
+		}
+		catch (Exception e) {
+			throw new DataFlowSchemaMigrationException("Unable to rehearse " + executionId, e);
+		}
+	}
+
+	/**
+	 * Rehearse commands of a callback.
+	 *
+	 * @param callback the callback
+	 */
+	public void rehearse(AbstractCallback callback) {
+		Assert.notNull(callback, "callback must be set");
+		Event event = callback.getEvent();
+		String executionId = callback.getClass().getName() + ":" + event;
+		try (Connection connection = dataSource.getConnection()) {
+			List<SqlCommand> commands = callback.getCommands(event,
+					FlywayContexts.callbackContext(configuration, connection));
+			if (commands == null || commands.isEmpty()) {
+				logger.warn("Callback {} resolved no commands against a rehearsal database", executionId);
+				return;
+			}
+			rehearse(executionId, connection, commands.iterator());
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to rehearse " + executionId, e);
+		}
+	}
+
+	/**
+	 * Rehearse a list of commands.
+	 *
+	 * @param executionId the execution id identifying commands in a report
+	 * @param commands the commands
+	 */
+	public void rehearse(String executionId, List<SqlCommand> commands) {
+		if (commands == null || commands.isEmpty()) {
+			return;
+		}
+		try (Connection connection = dataSource.getConnection()) {
+			rehearse(executionId, connection, commands.iterator());
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to rehearse " + executionId, e);
+		}
+	}
+
+	/**
+	 * Gets the timings of rehearsed commands in an executed order.
+	 *
+	 * @return the command timings
+	 */
+	public List<CommandTiming> getTimings() {
+		synchronized (timings) {
+			return new ArrayList<>(timings);
+		}
+	}
+
+	/**
+	 * Gets a human readable report of rehearsed commands.
+	 *
+	 * @return the report
+	 */
+	public String getReport() {
+		String nl = System.lineSeparator();
+		StringBuilder buf = new StringBuilder();
+		Duration total = Duration.ZERO;
+		for (CommandTiming timing : getTimings()) {
+			total = total.plus(timing.getForecast());
+			buf.append("  ").append(timing.getExecutionId()).append(": ")
+					.append(timing.getForecast().toMillis()).append(" ms forecast, ")
+					.append(timing.getLockLevel()).append(" lock on ").append(timing.getTables()).append(", ")
+					.append(timing.getCommand()).append(nl);
+		}
+		return "Rehearsal forecast " + total.toMillis() + " ms at scale " + scale + nl + buf;
+	}
+
+	@Override
+	public void close() {
+		if (dataSource instanceof EmbeddedDatabase) {
+			((EmbeddedDatabase) dataSource).shutdown();
+		}
+	}
+
+	private void rehearse(String executionId, Connection connection, Iterator<SqlCommand> commands) {
+		SqlCommandsRunner runner = new SqlCommandsRunner();
+		runner.addListener(event -> timings.add(new CommandTiming(event, getScale(
+				SqlTables.changedTables(event.getCommand())))));
+		runner.execute(executionId, connection, commands);
+	}
+
+	private void rehearseWhole(String executionId, AbstractMigration migration, Connection connection)
+			throws Exception {
+		Set<String> tables = Collections.emptySet();
+		LockLevel lockLevel = LockLevel.UNKNOWN;
+		if (migration instanceof AbstractTransformMigration) {
+			tables = Collections.singleton(((AbstractTransformMigration) migration).getTableName());
+			lockLevel = LockLevel.ROW;
+		}
+		else if (migration instanceof AbstractIndexRebuildMigration) {
+			tables = Collections.singleton(((AbstractIndexRebuildMigration) migration).getTableName());
+			lockLevel = LockLevel.EXCLUSIVE;
+		}
+		long start = System.nanoTime();
+		migration.migrate(FlywayContexts.migrationContext(configuration, connection));
+		Duration duration = Duration.ofNanos(System.nanoTime() - start);
+		timings.add(new CommandTiming(executionId, "migrate", duration, getScale(tables), -1, tables, lockLevel));
+	}
+
+	private double getScale(Set<String> tables) {
+		for (String table : tables) {
+			if (seededTables.contains(table.toUpperCase(Locale.ROOT))) {
+				return scale;
+			}
+		}
+		// commands not touching seeded tables don't grow with a scale
+		return 1.0;
+	}
+
+	private static boolean overridesMigrate(AbstractMigration migration) {
+		try {
+			return migration.getClass().getMethod("migrate", Context.class)
+					.getDeclaringClass() != AbstractMigration.class;
+		}
+		catch (NoSuchMethodException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Level of locks a command is expected to take on its tables.
+	 */
+	public enum LockLevel {
+
+		/** Command doesn't change tables */
+		NONE,
+
+		/** Command locks rows it changes */
+		ROW,
+
+		/** Command locks whole tables, blocking concurrent writes or reads */
+		EXCLUSIVE,
+
+		/** Locks are not known as a migration was rehearsed as a whole */
+		UNKNOWN
+	}
+
+	/**
+	 * Timing of a single rehearsed command.
+	 */
+	public static class CommandTiming {
+
+		private final String executionId;
+		private final String command;
+		private final Duration duration;
+		private final Duration forecast;
+		private final int updateCount;
+		private final Set<String> tables;
+		private final LockLevel lockLevel;
+
+		CommandTiming(SqlCommandEvent event, double scale) {
+			this.executionId = event.getExecutionId();
+			this.command = event.getCommand().getCommand();
+			this.duration = event.getDuration();
+			this.forecast = Duration.ofNanos((long) (event.getDuration().toNanos() / scale));
+			this.updateCount = event.getUpdateCount();
+			this.tables = SqlTables.changedTables(event.getCommand());
+			this.lockLevel = lockLevel(event.getCommand(), tables);
+		}
+
+		CommandTiming(String executionId, String command, Duration duration, double scale, int updateCount,
+				Set<String> tables, LockLevel lockLevel) {
+			this.executionId = executionId;
+			this.command = command;
+			this.duration = duration;
+			this.forecast = Duration.ofNanos((long) (duration.toNanos() / scale));
+			this.updateCount = updateCount;
+			this.tables = tables;
+			this.lockLevel = lockLevel;
+		}
+
+		/**
+		 * Gets the execution id identifying a migration or a callback.
+		 *
+		 * @return the execution id
+		 */
+		public String getExecutionId() {
+			return executionId;
+		}
+
+		/**
+		 * Gets the command.
+		 *
+		 * @return the command
+		 */
+		public String getCommand() {
+			return command;
+		}
+
+		/**
+		 * Gets the measured duration on an embedded database.
+		 *
+		 * @return the duration
+		 */
+		public Duration getDuration() {
+			return duration;
+		}
+
+		/**
+		 * Gets the duration extrapolated with a seed scale.
+		 *
+		 * @return the forecast duration
+		 */
+		public Duration getForecast() {
+			return forecast;
+		}
+
+		/**
+		 * Gets the update count, a number of rows for batch commands.
+		 *
+		 * @return the update count, negative if not known
+		 */
+		public int getUpdateCount() {
+			return updateCount;
+		}
+
+		/**
+		 * Gets the tables a command changes.
+		 *
+		 * @return the table names
+		 */
+		public Set<String> getTables() {
+			return tables;
+		}
+
+		/**
+		 * Gets the level of locks a command is expected to take.
+		 *
+		 * @return the lock level
+		 */
+		public LockLevel getLockLevel() {
+			return lockLevel;
+		}
+
+		private static LockLevel lockLevel(SqlCommand command, Set<String> tables) {
+			if (tables.isEmpty()) {
+				return LockLevel.NONE;
+			}
+			if (command instanceof AbstractChunkedSqlCommand || command instanceof CreateIndexOnlineSqlCommand
+					|| command instanceof BatchSqlCommand) {
+				return LockLevel.ROW;
+			}
+			String sql = command.getCommand() != null ? command.getCommand().trim().toUpperCase(Locale.ROOT) : "";
+			if (sql.startsWith("INSERT") || sql.startsWith("UPDATE") || sql.startsWith("DELETE")) {
+				return LockLevel.ROW;
+			}
+			return LockLevel.EXCLUSIVE;
+		}
+	}
+}
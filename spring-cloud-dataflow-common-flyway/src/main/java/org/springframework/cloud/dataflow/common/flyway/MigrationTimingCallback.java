@@ -0,0 +1,297 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.callback.Callback;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link Callback} recording time spent between pairs of Flyway
+ * {@code BEFORE_*} and {@code AFTER_*} events, like validate and migrate, and
+ * time spent in each applied migration. When also added as a
+ * {@link SqlCommandListener} into runners, time spent in commands of
+ * migrations and callbacks is recorded per execution id.
+ * <p>
+ * Time between {@link #markStart()} and a first event is reported as a setup
+ * time, covering configuration and classpath scanning. A report is logged on
+ * {@link Event#AFTER_MIGRATE} and {@link Event#AFTER_MIGRATE_ERROR} and is
+ * available from {@link #getReport()}.
+ */
+public class MigrationTimingCallback implements Callback, SqlCommandListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(MigrationTimingCallback.class);
+	private static final String BEFORE = "BEFORE_";
+	private static final String AFTER = "AFTER_";
+	private static final String ERROR = "_ERROR";
+	private static final String EACH_MIGRATE = "EACH_MIGRATE";
+	private final Map<String, Long> started = new HashMap<>();
+	private final Map<String, Duration> phases = new LinkedHashMap<>();
+	private final List<MigrationTiming> migrations = new ArrayList<>();
+	private final Map<String, Duration> executions = new LinkedHashMap<>();
+	private Long markedStart;
+	private Long firstEvent;
+	private Long lastEvent;
+	private String currentMigration;
+
+	/**
+	 * Marks a start of a Flyway setup. Should be called before Flyway is
+	 * configured for a setup time to get reported.
+	 */
+	public synchronized void markStart() {
+		markedStart = System.nanoTime();
+	}
+
+	@Override
+	public boolean supports(Event event, Context context) {
+		return true;
+	}
+
+	@Override
+	public boolean canHandleInTransaction(Event event, Context context) {
+		return true;
+	}
+
+	@Override
+	public void handle(Event event, Context context) {
+		long now = System.nanoTime();
+		String name = event.name();
+		synchronized (this) {
+			if (firstEvent == null) {
+				firstEvent = now;
+			}
+			lastEvent = now;
+			if (name.startsWith(BEFORE)) {
+				String phase = name.substring(BEFORE.length());
+				started.put(phase, now);
+				if (EACH_MIGRATE.equals(phase)) {
+					currentMigration = getMigrationName(context.getMigrationInfo());
+				}
+				return;
+			}
+			if (!name.startsWith(AFTER)) {
+				return;
+			}
+			boolean error = name.endsWith(ERROR);
+			String phase = name.substring(AFTER.length(), error ? name.length() - ERROR.length() : name.length());
+			Long start = started.remove(phase);
+			if (start == null) {
+				return;
+			}
+			Duration duration = Duration.ofNanos(now - start);
+			if (EACH_MIGRATE.equals(phase)) {
+				migrations.add(new MigrationTiming(currentMigration, duration, !error));
+				migrationCompleted(currentMigration, duration, !error);
+				currentMigration = null;
+			}
+			else {
+				phases.merge(phase, duration, Duration::plus);
+				phaseCompleted(phase, duration, !error);
+			}
+		}
+		if (event == Event.AFTER_MIGRATE || event == Event.AFTER_MIGRATE_ERROR) {
+			logger.info("Flyway timings{}{}", System.lineSeparator(), getReport());
+		}
+	}
+
+	@Override
+	public synchronized void executed(SqlCommandEvent event) {
+		if (event.getExecutionId() != null) {
+			executions.merge(event.getExecutionId(), event.getDuration(), Duration::plus);
+		}
+	}
+
+	/**
+	 * Gets a report of timings recorded so far.
+	 *
+	 * @return the timing report
+	 */
+	public synchronized Report getReport() {
+		Duration setup = markedStart != null && firstEvent != null ? Duration.ofNanos(firstEvent - markedStart)
+				: Duration.ZERO;
+		Duration total = firstEvent != null ? Duration.ofNanos(lastEvent - firstEvent).plus(setup) : setup;
+		return new Report(setup, total, new LinkedHashMap<>(phases), new ArrayList<>(migrations),
+				new LinkedHashMap<>(executions));
+	}
+
+	/**
+	 * Called when a pair of phase events has completed. Default implementation
+	 * does nothing.
+	 *
+	 * @param phase the phase name, like {@code MIGRATE} or {@code VALIDATE}
+	 * @param duration the duration of a phase
+	 * @param success true, if phase completed without an error
+	 */
+	protected void phaseCompleted(String phase, Duration duration, boolean success) {
+	}
+
+	/**
+	 * Called when a single migration has completed. Default implementation does
+	 * nothing.
+	 *
+	 * @param migration the migration name
+	 * @param duration the duration of a migration
+	 * @param success true, if migration completed without an error
+	 */
+	protected void migrationCompleted(String migration, Duration duration, boolean success) {
+	}
+
+	private static String getMigrationName(MigrationInfo info) {
+		if (info == null) {
+			return "unknown";
+		}
+		return info.getVersion() != null ? info.getVersion() + " " + info.getDescription() : info.getDescription();
+	}
+
+	/**
+	 * Timing of a single applied migration.
+	 */
+	public static class MigrationTiming {
+
+		private final String migration;
+		private final Duration duration;
+		private final boolean success;
+
+		MigrationTiming(String migration, Duration duration, boolean success) {
+			this.migration = migration;
+			this.duration = duration;
+			this.success = success;
+		}
+
+		/**
+		 * Gets the migration version and description.
+		 *
+		 * @return the migration name
+		 */
+		public String getMigration() {
+			return migration;
+		}
+
+		/**
+		 * Gets the duration.
+		 *
+		 * @return the duration
+		 */
+		public Duration getDuration() {
+			return duration;
+		}
+
+		/**
+		 * Checks if migration completed without an error.
+		 *
+		 * @return true, if successful
+		 */
+		public boolean isSuccess() {
+			return success;
+		}
+	}
+
+	/**
+	 * Structured report of recorded timings.
+	 */
+	public static class Report {
+
+		private final Duration setup;
+		private final Duration total;
+		private final Map<String, Duration> phases;
+		private final List<MigrationTiming> migrations;
+		private final Map<String, Duration> executions;
+
+		Report(Duration setup, Duration total, Map<String, Duration> phases, List<MigrationTiming> migrations,
+				Map<String, Duration> executions) {
+			this.setup = setup;
+			this.total = total;
+			this.phases = Collections.unmodifiableMap(phases);
+			this.migrations = Collections.unmodifiableList(migrations);
+			this.executions = Collections.unmodifiableMap(executions);
+		}
+
+		/**
+		 * Gets the time between a marked start and a first Flyway event.
+		 *
+		 * @return the setup time, zero if start was not marked
+		 */
+		public Duration getSetup() {
+			return setup;
+		}
+
+		/**
+		 * Gets the total time from a marked start or a first event to a last
+		 * event.
+		 *
+		 * @return the total time
+		 */
+		public Duration getTotal() {
+			return total;
+		}
+
+		/**
+		 * Gets the phase timings keyed by a phase name.
+		 *
+		 * @return the phase timings
+		 */
+		public Map<String, Duration> getPhases() {
+			return phases;
+		}
+
+		/**
+		 * Gets the timings of applied migrations in an applied order.
+		 *
+		 * @return the migration timings
+		 */
+		public List<MigrationTiming> getMigrations() {
+			return migrations;
+		}
+
+		/**
+		 * Gets the time spent in commands keyed by an execution id.
+		 *
+		 * @return the command timings
+		 */
+		public Map<String, Duration> getExecutions() {
+			return executions;
+		}
+
+		@Override
+		public String toString() {
+			String nl = System.lineSeparator();
+			StringBuilder buf = new StringBuilder();
+			buf.append("  total: ").append(total.toMillis()).append(" ms").append(nl);
+			buf.append("  setup: ").append(setup.toMillis()).append(" ms").append(nl);
+			phases.forEach((phase, duration) -> buf.append("  phase ").append(phase).append(": ")
+					.append(duration.toMillis()).append(" ms").append(nl));
+			for (MigrationTiming timing : migrations) {
+				buf.append("  migration ").append(timing.getMigration()).append(": ")
+						.append(timing.getDuration().toMillis()).append(" ms")
+						.append(timing.isSuccess() ? "" : " (failed)").append(nl);
+			}
+			executions.forEach((id, duration) -> buf.append("  commands ").append(id).append(": ")
+					.append(duration.toMillis()).append(" ms").append(nl));
+			return buf.toString();
+		}
+	}
+}
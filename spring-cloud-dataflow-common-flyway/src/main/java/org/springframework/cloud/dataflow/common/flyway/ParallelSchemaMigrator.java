@@ -0,0 +1,315 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Applies migrations of a Flyway {@link Configuration} to multiple schemas or
+ * data sources concurrently using a bounded pool.
+ * <p>
+ * Migrations and callbacks registered as instances in a template
+ * configuration are shared between all targets and called concurrently, thus
+ * those must be stateless. Use {@link #perTarget(Function, int)} to create
+ * stateful instances, e.g. callbacks keeping timings of a migration, for every
+ * target.
+ */
+public class ParallelSchemaMigrator {
+
+	private static final Logger logger = LoggerFactory.getLogger(ParallelSchemaMigrator.class);
+	private final Function<Target, Configuration> configurationFactory;
+	private final int parallelism;
+	private ErrorPolicy errorPolicy = ErrorPolicy.FAIL_FAST;
+	private Consumer<Result> progressListener;
+
+	/**
+	 * Instantiates a new parallel schema migrator sharing a template
+	 * configuration with its migration and callback instances between all
+	 * targets.
+	 *
+	 * @param template the template configuration
+	 * @param parallelism the maximum number of concurrent migrations
+	 */
+	public ParallelSchemaMigrator(Configuration template, int parallelism) {
+		this(templateFactory(template), parallelism);
+	}
+
+	private ParallelSchemaMigrator(Function<Target, Configuration> configurationFactory, int parallelism) {
+		Assert.isTrue(parallelism > 0, "parallelism must be positive");
+		this.configurationFactory = configurationFactory;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Creates a parallel schema migrator creating a configuration for every
+	 * target. Factory is called from a thread migrating a target and its data
+	 * source and schema are set on a returned configuration.
+	 *
+	 * @param configurationFactory the factory creating a configuration of a target
+	 * @param parallelism the maximum number of concurrent migrations
+	 * @return the parallel schema migrator
+	 */
+	public static ParallelSchemaMigrator perTarget(Function<Target, Configuration> configurationFactory,
+			int parallelism) {
+		Assert.notNull(configurationFactory, "configurationFactory must be set");
+		return new ParallelSchemaMigrator(configurationFactory, parallelism);
+	}
+
+	/**
+	 * Sets the error policy. Defaults to {@link ErrorPolicy#FAIL_FAST}.
+	 *
+	 * @param errorPolicy the error policy
+	 */
+	public void setErrorPolicy(ErrorPolicy errorPolicy) {
+		Assert.notNull(errorPolicy, "errorPolicy must be set");
+		this.errorPolicy = errorPolicy;
+	}
+
+	/**
+	 * Sets a listener notified when a migration of a target completes.
+	 *
+	 * @param progressListener the progress listener
+	 */
+	public void setProgressListener(Consumer<Result> progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Migrate given targets.
+	 *
+	 * @param targets the migration targets
+	 * @return the results in an order of targets
+	 */
+	public List<Result> migrate(List<Target> targets) {
+		Assert.notNull(targets, "targets must be set");
+		AtomicBoolean failed = new AtomicBoolean();
+		AtomicInteger done = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, targets.size())));
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (Target target : targets) {
+				futures.add(executor.submit(() -> {
+					Result result = migrate(target, failed);
+					logger.info("Migrated {}/{} schemas, {} {}", done.incrementAndGet(), targets.size(),
+							target.getName(), result.getStatus());
+					if (progressListener != null) {
+						progressListener.accept(result);
+					}
+					return result;
+				}));
+			}
+			List<Result> results = new ArrayList<>();
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new DataFlowSchemaMigrationException("Interrupted while migrating schemas", e);
+				}
+				catch (ExecutionException e) {
+					throw new DataFlowSchemaMigrationException("Unexpected error migrating schemas", e.getCause());
+				}
+			}
+			return results;
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private Result migrate(Target target, AtomicBoolean failed) {
+		if (errorPolicy == ErrorPolicy.FAIL_FAST && failed.get()) {
+			return new Result(target.getName(), Status.SKIPPED, Duration.ZERO, null);
+		}
+		long start = System.nanoTime();
+		try {
+			Configuration base = configurationFactory.apply(target);
+			Assert.notNull(base, "configurationFactory returned null configuration");
+			FluentConfiguration configuration = Flyway.configure(base.getClassLoader())
+					.configuration(base)
+					.dataSource(target.getDataSource());
+			if (target.getSchema() != null) {
+				configuration.schemas(target.getSchema());
+			}
+			configuration.load().migrate();
+			return new Result(target.getName(), Status.SUCCEEDED, Duration.ofNanos(System.nanoTime() - start), null);
+		}
+		catch (RuntimeException e) {
+			failed.set(true);
+			logger.error("Migration of " + target.getName() + " failed", e);
+			return new Result(target.getName(), Status.FAILED, Duration.ofNanos(System.nanoTime() - start), e);
+		}
+	}
+
+	private static Function<Target, Configuration> templateFactory(Configuration template) {
+		Assert.notNull(template, "template must be set");
+		return target -> template;
+	}
+
+	/**
+	 * Policy what to do with remaining targets when a migration fails.
+	 */
+	public enum ErrorPolicy {
+
+		/** Skip targets whose migration has not yet started */
+		FAIL_FAST,
+
+		/** Migrate all targets */
+		CONTINUE_ON_ERROR
+	}
+
+	/**
+	 * Status of a target migration.
+	 */
+	public enum Status {
+
+		/** Migration was applied */
+		SUCCEEDED,
+
+		/** Migration failed */
+		FAILED,
+
+		/** Migration was not started as an other target failed */
+		SKIPPED
+	}
+
+	/**
+	 * Schema or a data source to migrate.
+	 */
+	public static class Target {
+
+		private final String name;
+		private final DataSource dataSource;
+		private final String schema;
+
+		/**
+		 * Instantiates a new target.
+		 *
+		 * @param name the name of a target
+		 * @param dataSource the data source
+		 * @param schema the schema, {@code null} to use a template or a default schema
+		 */
+		public Target(String name, DataSource dataSource, String schema) {
+			Assert.hasText(name, "name must be set");
+			Assert.notNull(dataSource, "dataSource must be set");
+			this.name = name;
+			this.dataSource = dataSource;
+			this.schema = schema;
+		}
+
+		/**
+		 * Gets the name of a target.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the data source.
+		 *
+		 * @return the data source
+		 */
+		public DataSource getDataSource() {
+			return dataSource;
+		}
+
+		/**
+		 * Gets the schema.
+		 *
+		 * @return the schema, {@code null} to use a template or a default schema
+		 */
+		public String getSchema() {
+			return schema;
+		}
+	}
+
+	/**
+	 * Result of a target migration.
+	 */
+	public static class Result {
+
+		private final String name;
+		private final Status status;
+		private final Duration duration;
+		private final Exception exception;
+
+		Result(String name, Status status, Duration duration, Exception exception) {
+			this.name = name;
+			this.status = status;
+			this.duration = duration;
+			this.exception = exception;
+		}
+
+		/**
+		 * Gets the name of a migrated target.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Gets the status of a migration.
+		 *
+		 * @return the status
+		 */
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Gets the duration of a migration.
+		 *
+		 * @return the duration, zero if migration was skipped
+		 */
+		public Duration getDuration() {
+			return duration;
+		}
+
+		/**
+		 * Gets the exception a migration failed with.
+		 *
+		 * @return the exception, {@code null} unless migration failed
+		 */
+		public Exception getException() {
+			return exception;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Command purging rows of a root table matching a cutoff condition together
+ * with rows of dependent tables, optionally archiving rows into tables with a
+ * same structure and a name prefix before deleting them. Rows are processed in
+ * root table key ranges, dependent tables are processed in an order they were
+ * added and a root table last, so foreign keys are respected. With an
+ * auto-commit connection every chunk is committed in its own transaction, so
+ * locks on live tables are held only for a duration of a chunk.
+ */
+public class PurgeSqlCommand extends AbstractChunkedSqlCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(PurgeSqlCommand.class);
+	private final List<Dependent> dependents = new ArrayList<>();
+	private String archivePrefix;
+
+	/**
+	 * Instantiates a new purge sql command.
+	 *
+	 * @param tableName the root table name
+	 * @param keyColumn the numeric key column of a root table
+	 * @param cutoffCondition the condition selecting purged root rows, like {@code END_TIME < '2020-01-01'}
+	 * @param chunkSize the size of a key range in a chunk
+	 */
+	public PurgeSqlCommand(String tableName, String keyColumn, String cutoffCondition, long chunkSize) {
+		super("DELETE FROM " + tableName + " WHERE " + cutoffCondition, tableName, keyColumn, cutoffCondition,
+				chunkSize);
+		Assert.hasText(cutoffCondition, "cutoffCondition must be set");
+	}
+
+	/**
+	 * Creates a purge command for Spring Batch job executions and their
+	 * parameters, contexts and step executions.
+	 *
+	 * @param cutoffCondition the condition on {@code BATCH_JOB_EXECUTION}, like {@code END_TIME < '2020-01-01'}
+	 * @param chunkSize the size of a key range in a chunk
+	 * @return the purge sql command
+	 */
+	public static PurgeSqlCommand forBatchJobExecutions(String cutoffCondition, long chunkSize) {
+		return new PurgeSqlCommand("BATCH_JOB_EXECUTION", "JOB_EXECUTION_ID", cutoffCondition, chunkSize)
+				.addDependent("BATCH_STEP_EXECUTION_CONTEXT", "STEP_EXECUTION_ID", "BATCH_STEP_EXECUTION",
+						"STEP_EXECUTION_ID", "JOB_EXECUTION_ID")
+				.addDependent("BATCH_STEP_EXECUTION", "JOB_EXECUTION_ID")
+				.addDependent("BATCH_JOB_EXECUTION_CONTEXT", "JOB_EXECUTION_ID")
+				.addDependent("BATCH_JOB_EXECUTION_PARAMS", "JOB_EXECUTION_ID");
+	}
+
+	/**
+	 * Creates a purge command for Spring Cloud Task executions and their
+	 * parameters and job associations.
+	 *
+	 * @param cutoffCondition the condition on {@code TASK_EXECUTION}, like {@code END_TIME < '2020-01-01'}
+	 * @param chunkSize the size of a key range in a chunk
+	 * @return the purge sql command
+	 */
+	public static PurgeSqlCommand forTaskExecutions(String cutoffCondition, long chunkSize) {
+		return new PurgeSqlCommand("TASK_EXECUTION", "TASK_EXECUTION_ID", cutoffCondition, chunkSize)
+				.addDependent("TASK_EXECUTION_PARAMS", "TASK_EXECUTION_ID")
+				.addDependent("TASK_TASK_BATCH", "TASK_EXECUTION_ID");
+	}
+
+	/**
+	 * Adds a dependent table referencing a key of a root table.
+	 *
+	 * @param table the dependent table name
+	 * @param column the column referencing a root table key
+	 * @return this command for chaining
+	 */
+	public PurgeSqlCommand addDependent(String table, String column) {
+		Assert.hasText(table, "table must be set");
+		Assert.hasText(column, "column must be set");
+		dependents.add(new Dependent(table, column, null, null, null));
+		return this;
+	}
+
+	/**
+	 * Adds a dependent table referencing a key of an intermediary table which
+	 * in turn references a key of a root table. Intermediary table is expected
+	 * to be added as a dependent after this table.
+	 *
+	 * @param table the dependent table name
+	 * @param column the column referencing an intermediary table key
+	 * @param viaTable the intermediary table name
+	 * @param viaKeyColumn the key column of an intermediary table
+	 * @param viaParentColumn the column of an intermediary table referencing a root table key
+	 * @return this command for chaining
+	 */
+	public PurgeSqlCommand addDependent(String table, String column, String viaTable, String viaKeyColumn,
+			String viaParentColumn) {
+		Assert.hasText(table, "table must be set");
+		Assert.hasText(column, "column must be set");
+		Assert.hasText(viaTable, "viaTable must be set");
+		Assert.hasText(viaKeyColumn, "viaKeyColumn must be set");
+		Assert.hasText(viaParentColumn, "viaParentColumn must be set");
+		dependents.add(new Dependent(table, column, viaTable, viaKeyColumn, viaParentColumn));
+		return this;
+	}
+
+	/**
+	 * Sets the prefix of archive tables. When set, rows are copied into a table
+	 * with a prefixed name before deleting them. Archive tables are expected to
+	 * exist with a same column layout.
+	 *
+	 * @param archivePrefix the archive table prefix, {@code null} to only delete rows
+	 */
+	public void setArchivePrefix(String archivePrefix) {
+		this.archivePrefix = archivePrefix;
+	}
+
+	@Override
+	protected int handleChunk(JdbcTemplate jdbcTemplate, Connection connection, long from, long to) {
+		boolean autoCommit = isAutoCommit(connection);
+		try {
+			if (autoCommit) {
+				connection.setAutoCommit(false);
+			}
+			String rootKeys = "SELECT " + getKeyColumn() + " FROM " + getTableName() + " WHERE "
+					+ getChunkWhereClause();
+			for (Dependent dependent : dependents) {
+				String condition = dependent.getCondition(rootKeys);
+				archive(jdbcTemplate, dependent.table, condition, from, to);
+				int rows = jdbcTemplate.update("DELETE FROM " + dependent.table + " WHERE " + condition, from, to);
+				logger.debug("Purged {} rows from {}", rows, dependent.table);
+			}
+			String condition = getChunkWhereClause();
+			archive(jdbcTemplate, getTableName(), condition, from, to);
+			int rows = jdbcTemplate.update("DELETE FROM " + getTableName() + " WHERE " + condition, from, to);
+			if (autoCommit) {
+				connection.commit();
+			}
+			return rows;
+		}
+		catch (SQLException e) {
+			if (autoCommit) {
+				rollback(connection);
+			}
+			throw new DataFlowSchemaMigrationException("Unable to commit purge of " + getTableName(), e);
+		}
+		catch (RuntimeException e) {
+			if (autoCommit) {
+				rollback(connection);
+			}
+			throw e;
+		}
+		finally {
+			if (autoCommit) {
+				restoreAutoCommit(connection);
+			}
+		}
+	}
+
+	private void archive(JdbcTemplate jdbcTemplate, String table, String condition, long from, long to) {
+		if (archivePrefix != null) {
+			int rows = jdbcTemplate.update("INSERT INTO " + archivePrefix + table + " SELECT * FROM " + table
+					+ " WHERE " + condition, from, to);
+			logger.debug("Archived {} rows from {}", rows, table);
+		}
+	}
+
+	private static boolean isAutoCommit(Connection connection) {
+		try {
+			return connection.getAutoCommit();
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private static void rollback(Connection connection) {
+		try {
+			connection.rollback();
+		}
+		catch (SQLException e) {
+			logger.warn("Unable to rollback purge chunk", e);
+		}
+	}
+
+	private static void restoreAutoCommit(Connection connection) {
+		try {
+			connection.setAutoCommit(true);
+		}
+		catch (SQLException e) {
+			logger.warn("Unable to restore auto-commit mode", e);
+		}
+	}
+
+	private static class Dependent {
+
+		private final String table;
+		private final String column;
+		private final String viaTable;
+		private final String viaKeyColumn;
+		private final String viaParentColumn;
+
+		Dependent(String table, String column, String viaTable, String viaKeyColumn, String viaParentColumn) {
+			this.table = table;
+			this.column = column;
+			this.viaTable = viaTable;
+			this.viaKeyColumn = viaKeyColumn;
+			this.viaParentColumn = viaParentColumn;
+		}
+
+		String getCondition(String rootKeys) {
+			if (viaTable == null) {
+				return column + " IN (" + rootKeys + ")";
+			}
+			return column + " IN (SELECT " + viaKeyColumn + " FROM " + viaTable + " WHERE " + viaParentColumn
+					+ " IN (" + rootKeys + "))";
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+
+import org.springframework.util.Assert;
+
+/**
+ * Callback refreshing optimizer statistics on {@link Event#AFTER_MIGRATE} for
+ * tables changed by executed commands. Callback needs to be added as a
+ * {@link SqlCommandListener} into runners used by migrations and callbacks
+ * whose changes should be tracked.
+ */
+public class RefreshStatisticsCallback extends AbstractCallback implements SqlCommandListener {
+
+	// keyed by upper case name to avoid refreshing same table twice
+	private final Map<String, String> tables = new ConcurrentHashMap<>();
+
+	/**
+	 * Instantiates a new refresh statistics callback.
+	 */
+	public RefreshStatisticsCallback() {
+		super(Event.AFTER_MIGRATE);
+	}
+
+	@Override
+	public void executed(SqlCommandEvent event) {
+		if (event.isSuppressed()) {
+			return;
+		}
+		for (String table : SqlTables.changedTables(event.getCommand())) {
+			addTable(table);
+		}
+	}
+
+	/**
+	 * Adds a table whose statistics should be refreshed.
+	 *
+	 * @param table the table name
+	 */
+	public void addTable(String table) {
+		Assert.hasText(table, "table must be set");
+		tables.putIfAbsent(table.toUpperCase(Locale.ROOT), table);
+	}
+
+	@Override
+	public void handle(Event event, Context context) {
+		List<SqlCommand> commands = getCommands(event, context);
+		super.handle(event, context);
+		for (SqlCommand command : commands) {
+			tables.remove(((RefreshStatisticsSqlCommand) command).getTableName().toUpperCase(Locale.ROOT));
+		}
+	}
+
+	@Override
+	public List<SqlCommand> getCommands(Event event, Context context) {
+		List<SqlCommand> commands = new ArrayList<>();
+		for (String table : tables.values()) {
+			commands.add(new RefreshStatisticsSqlCommand(table));
+		}
+		return commands;
+	}
+}
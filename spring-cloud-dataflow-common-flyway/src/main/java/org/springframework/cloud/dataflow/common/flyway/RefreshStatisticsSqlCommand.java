@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+/**
+ * Command refreshing optimizer statistics of a table using a dialect specific
+ * statement. Failing to refresh statistics is logged but doesn't fail a
+ * migration.
+ */
+public class RefreshStatisticsSqlCommand extends SqlCommand {
+
+	private static final Logger logger = LoggerFactory.getLogger(RefreshStatisticsSqlCommand.class);
+	private final String tableName;
+
+	/**
+	 * Instantiates a new refresh statistics sql command.
+	 *
+	 * @param tableName the table name
+	 */
+	public RefreshStatisticsSqlCommand(String tableName) {
+		super("ANALYZE " + tableName, null);
+		Assert.hasText(tableName, "tableName must be set");
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Gets the table name.
+	 *
+	 * @return the table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	@Override
+	public boolean isDeferrable() {
+		return true;
+	}
+
+	@Override
+	public boolean canHandleInJdbcTemplate() {
+		return true;
+	}
+
+	@Override
+	public void handle(JdbcTemplate jdbcTemplate, Connection connection) {
+		String sql = getRefreshCommand(SqlDialect.fromConnection(connection));
+		if (sql == null) {
+			logger.debug("Statistics refresh not supported for table {}", tableName);
+			return;
+		}
+		try {
+			logger.debug("Executing command {}", sql);
+			jdbcTemplate.execute(sql);
+		}
+		catch (DataAccessException e) {
+			logger.warn("Unable to refresh statistics for table " + tableName, e);
+		}
+	}
+
+	/**
+	 * Gets the statistics refresh command for a dialect.
+	 *
+	 * @param dialect the sql dialect
+	 * @return the statistics refresh command, {@code null} if not supported
+	 */
+	public String getRefreshCommand(SqlDialect dialect) {
+		switch (dialect) {
+			case POSTGRESQL:
+				return "ANALYZE " + tableName;
+			case ORACLE:
+				return "BEGIN DBMS_STATS.GATHER_TABLE_STATS(ownname => USER, tabname => '"
+						+ tableName.toUpperCase(Locale.ROOT) + "'); END;";
+			case SQLSERVER:
+				return "UPDATE STATISTICS " + tableName;
+			case MYSQL:
+			case MARIADB:
+			case H2:
+				return "ANALYZE TABLE " + tableName;
+			default:
+				return null;
+		}
+	}
+}
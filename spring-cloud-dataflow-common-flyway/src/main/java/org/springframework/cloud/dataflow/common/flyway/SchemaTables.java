@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Utility methods creating bookkeeping tables of migrators and journals if
+ * those don't exist.
+ */
+final class SchemaTables {
+
+	private SchemaTables() {
+	}
+
+	/**
+	 * Creates a table if it's absent from a snapshot, in which case a snapshot
+	 * is invalidated for a created table.
+	 *
+	 * @param jdbcTemplate the jdbc template
+	 * @param snapshot the database metadata snapshot
+	 * @param tableName the table name
+	 * @param columns the column definitions
+	 * @return true, if table was created
+	 */
+	static boolean createIfAbsent(JdbcTemplate jdbcTemplate, DatabaseMetaDataSnapshot snapshot, String tableName,
+			String columns) {
+		if (snapshot.hasTable(tableName)) {
+			return false;
+		}
+		jdbcTemplate.execute("CREATE TABLE " + tableName + " (" + columns + ")");
+		snapshot.invalidate(tableName);
+		return true;
+	}
+
+	/**
+	 * Creates a table if it doesn't exist using an own connection of a data
+	 * source.
+	 *
+	 * @param dataSource the data source
+	 * @param tableName the table name
+	 * @param columns the function giving column definitions for a dialect
+	 * @return true, if table was created
+	 */
+	static boolean createIfAbsent(DataSource dataSource, String tableName, Function<SqlDialect, String> columns) {
+		try (Connection connection = dataSource.getConnection()) {
+			return createIfAbsent(new JdbcTemplate(new SingleConnectionDataSource(connection, true)),
+					new DatabaseMetaDataSnapshot(connection), tableName,
+					columns.apply(SqlDialect.fromConnection(connection)));
+		}
+		catch (SQLException e) {
+			throw new DataFlowSchemaMigrationException("Unable to read table metadata", e);
+		}
+	}
+}
@@ -96,6 +96,28 @@ public class SqlCommand {
 		return suppressedErrorCodes;
 	}
 
+	/**
+	 * Checks if this command can be executed within a transaction. Migrations
+	 * and callbacks containing a command which can't are executed without a
+	 * transaction.
+	 *
+	 * @return true, if command can be executed in a transaction
+	 */
+	public boolean canExecuteInTransaction() {
+		return true;
+	}
+
+	/**
+	 * Checks if this command can be deferred to be executed after a migration
+	 * when a {@link SqlCommandsRunner} is configured with
+	 * {@link DeferredSqlCommands}.
+	 *
+	 * @return true, if command can be deferred
+	 */
+	public boolean isDeferrable() {
+		return false;
+	}
+
 	/**
 	 * Checks if this command can handle execution directly
 	 * in a given jdbc template.
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.time.Duration;
+
+/**
+ * Event describing an execution of a single {@link SqlCommand}.
+ */
+public class SqlCommandEvent {
+
+	private final String executionId;
+	private final SqlCommand command;
+	private final Duration duration;
+	private final int updateCount;
+	private final Integer suppressedErrorCode;
+
+	/**
+	 * Instantiates a new sql command event.
+	 *
+	 * @param executionId the execution id, may be {@code null}
+	 * @param command the executed command
+	 * @param duration the execution duration
+	 * @param updateCount the update count, negative if not known
+	 * @param suppressedErrorCode the suppressed error code, {@code null} if not suppressed
+	 */
+	public SqlCommandEvent(String executionId, SqlCommand command, Duration duration, int updateCount,
+			Integer suppressedErrorCode) {
+		this.executionId = executionId;
+		this.command = command;
+		this.duration = duration;
+		this.updateCount = updateCount;
+		this.suppressedErrorCode = suppressedErrorCode;
+	}
+
+	/**
+	 * Gets the execution id identifying a migration or a callback.
+	 *
+	 * @return the execution id, {@code null} if not known
+	 */
+	public String getExecutionId() {
+		return executionId;
+	}
+
+	/**
+	 * Gets the executed command.
+	 *
+	 * @return the command
+	 */
+	public SqlCommand getCommand() {
+		return command;
+	}
+
+	/**
+	 * Gets the execution duration. Commands executed in a batch share a
+	 * duration of a batch evenly.
+	 *
+	 * @return the duration
+	 */
+	public Duration getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Gets the update count.
+	 *
+	 * @return the update count, negative if not known
+	 */
+	public int getUpdateCount() {
+		return updateCount;
+	}
+
+	/**
+	 * Checks if an error of a command was suppressed.
+	 *
+	 * @return true, if error was suppressed
+	 */
+	public boolean isSuppressed() {
+		return suppressedErrorCode != null;
+	}
+
+	/**
+	 * Gets the suppressed error code.
+	 *
+	 * @return the suppressed error code, {@code null} if not suppressed
+	 */
+	public Integer getSuppressedErrorCode() {
+		return suppressedErrorCode;
+	}
+
+	@Override
+	public String toString() {
+		return "SqlCommandEvent [executionId=" + executionId + ", command=" + command.getCommand() + ", duration="
+				+ duration + ", updateCount=" + updateCount + ", suppressedErrorCode=" + suppressedErrorCode + "]";
+	}
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+
+/**
+ * {@link SqlCommandListener} persisting outcomes of executed commands into a
+ * journal table. Events are queued into a bounded buffer and written in
+ * batches from a background thread using own connections of a given
+ * {@link DataSource}, thus journal writes neither slow down commands nor take
+ * part in migration transactions. Commands are hashed by a writer as well. If
+ * a buffer is full, events are dropped rather than blocking a migration.
+ * <p>
+ * Every journal instance records entries with its own run id, so runs of a
+ * same upgrade can be compared.
+ */
+public class SqlCommandJournal implements SqlCommandListener, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SqlCommandJournal.class);
+	/** Default name of a journal table */
+	public static final String DEFAULT_TABLE_NAME = "DATAFLOW_MIGRATION_JOURNAL";
+	private static final int MAX_BATCH = 100;
+	private static final String COLUMNS = "RUN_ID, EXECUTION_ID, COMMAND_HASH, DURATION_MS, UPDATE_COUNT, "
+			+ "SUPPRESSED_CODE, RECORDED";
+	private static final RowMapper<Entry> ENTRY_MAPPER = (rs, rowNum) -> {
+		int suppressed = rs.getInt(6);
+		Integer suppressedErrorCode = rs.wasNull() ? null : suppressed;
+		return new Entry(rs.getString(1), rs.getString(2), rs.getString(3), rs.getLong(4), rs.getInt(5),
+				suppressedErrorCode, rs.getLong(7));
+	};
+	private final JdbcTemplate jdbcTemplate;
+	private final DataSource dataSource;
+	private final String tableName;
+	private final String runId = UUID.randomUUID().toString();
+	private final BlockingQueue<RecordedEvent> queue;
+	private final AtomicLong dropped = new AtomicLong();
+	private ExecutorService writer;
+	private volatile boolean running;
+
+	/**
+	 * Instantiates a new sql command journal using a default table name and
+	 * buffer capacity.
+	 *
+	 * @param dataSource the data source
+	 */
+	public SqlCommandJournal(DataSource dataSource) {
+		this(dataSource, DEFAULT_TABLE_NAME, 10000);
+	}
+
+	/**
+	 * Instantiates a new sql command journal.
+	 *
+	 * @param dataSource the data source
+	 * @param tableName the journal table name
+	 * @param capacity the max number of buffered events
+	 */
+	public SqlCommandJournal(DataSource dataSource, String tableName, int capacity) {
+		Assert.notNull(dataSource, "dataSource must be set");
+		Assert.hasText(tableName, "tableName must be set");
+		Assert.isTrue(capacity > 0, "capacity must be positive");
+		this.dataSource = dataSource;
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.tableName = tableName;
+		this.queue = new LinkedBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * Gets the run id of this journal.
+	 *
+	 * @return the run id
+	 */
+	public String getRunId() {
+		return runId;
+	}
+
+	/**
+	 * Creates a journal table if needed and starts a background writer.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		initialize();
+		running = true;
+		writer = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "dataflow-migration-journal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.execute(this::write);
+	}
+
+	/**
+	 * Stops a background writer after buffered events have been written.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+				logger.warn("Timed out writing migration journal, {} events not written", queue.size());
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (dropped.get() > 0) {
+			logger.warn("Dropped {} migration journal events as buffer was full", dropped.get());
+		}
+	}
+
+	@Override
+	public void executed(SqlCommandEvent event) {
+		if (!queue.offer(new RecordedEvent(event, System.currentTimeMillis()))) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Find journal entries of a run.
+	 *
+	 * @param runId the run id
+	 * @return the journal entries in recorded order
+	 */
+	public List<Entry> findByRunId(String runId) {
+		return jdbcTemplate.query("SELECT " + COLUMNS + " FROM " + tableName + " WHERE RUN_ID = ? ORDER BY RECORDED",
+				ENTRY_MAPPER, runId);
+	}
+
+	/**
+	 * Find journal entries of a migration or a callback across all runs.
+	 *
+	 * @param executionId the execution id
+	 * @return the journal entries in recorded order
+	 */
+	public List<Entry> findByExecutionId(String executionId) {
+		return jdbcTemplate.query("SELECT " + COLUMNS + " FROM " + tableName
+				+ " WHERE EXECUTION_ID = ? ORDER BY RECORDED", ENTRY_MAPPER, executionId);
+	}
+
+	private void write() {
+		MessageDigest digest = Digests.sha256();
+		List<RecordedEvent> batch = new ArrayList<>();
+		while (running || !queue.isEmpty()) {
+			try {
+				RecordedEvent event = queue.poll(500, TimeUnit.MILLISECONDS);
+				if (event == null) {
+					continue;
+				}
+				batch.add(event);
+				queue.drainTo(batch, MAX_BATCH - 1);
+				jdbcTemplate.batchUpdate("INSERT INTO " + tableName + " (" + COLUMNS
+						+ ") VALUES (?, ?, ?, ?, ?, ?, ?)", toArgs(batch, digest));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch (DataAccessException e) {
+				logger.warn("Unable to write {} migration journal events", batch.size(), e);
+			}
+			catch (RuntimeException e) {
+				// keep writer alive, otherwise events would pile up in a queue
+				logger.error("Unexpected error writing {} migration journal events", batch.size(), e);
+			}
+			finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void initialize() {
+		SchemaTables.createIfAbsent(dataSource, tableName,
+				dialect -> "RUN_ID VARCHAR(36) NOT NULL, EXECUTION_ID VARCHAR(255), COMMAND_HASH VARCHAR(64) NOT NULL, "
+						+ "DURATION_MS NUMERIC(19) NOT NULL, UPDATE_COUNT INTEGER NOT NULL, SUPPRESSED_CODE INTEGER, "
+						+ "RECORDED NUMERIC(19) NOT NULL");
+	}
+
+	private List<Object[]> toArgs(List<RecordedEvent> events, MessageDigest digest) {
+		List<Object[]> args = new ArrayList<>(events.size());
+		for (RecordedEvent recorded : events) {
+			SqlCommandEvent event = recorded.event;
+			String command = event.getCommand().getCommand();
+			byte[] bytes = (command != null ? command : "").getBytes(StandardCharsets.UTF_8);
+			String hash = Digests.toHex(digest.digest(bytes));
+			args.add(new Object[] { runId, event.getExecutionId(), hash, event.getDuration().toMillis(),
+					event.getUpdateCount(), event.getSuppressedErrorCode(), recorded.recorded });
+		}
+		return args;
+	}
+
+	private static class RecordedEvent {
+
+		private final SqlCommandEvent event;
+		private final long recorded;
+
+		RecordedEvent(SqlCommandEvent event, long recorded) {
+			this.event = event;
+			this.recorded = recorded;
+		}
+	}
+
+	/**
+	 * Journal entry of a single executed command.
+	 */
+	public static class Entry {
+
+		private final String runId;
+		private final String executionId;
+		private final String commandHash;
+		private final long durationMillis;
+		private final int updateCount;
+		private final Integer suppressedErrorCode;
+		private final long recorded;
+
+		Entry(String runId, String executionId, String commandHash, long durationMillis, int updateCount,
+				Integer suppressedErrorCode, long recorded) {
+			this.runId = runId;
+			this.executionId = executionId;
+			this.commandHash = commandHash;
+			this.durationMillis = durationMillis;
+			this.updateCount = updateCount;
+			this.suppressedErrorCode = suppressedErrorCode;
+			this.recorded = recorded;
+		}
+
+		/**
+		 * Gets the id of a journal run which recorded an entry.
+		 *
+		 * @return the run id
+		 */
+		public String getRunId() {
+			return runId;
+		}
+
+		/**
+		 * Gets the execution id identifying a migration or a callback.
+		 *
+		 * @return the execution id, {@code null} if not known
+		 */
+		public String getExecutionId() {
+			return executionId;
+		}
+
+		/**
+		 * Gets the hex encoded SHA-256 hash of a command.
+		 *
+		 * @return the command hash
+		 */
+		public String getCommandHash() {
+			return commandHash;
+		}
+
+		/**
+		 * Gets the execution duration in milliseconds.
+		 *
+		 * @return the duration
+		 */
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		/**
+		 * Gets the update count.
+		 *
+		 * @return the update count, negative if not known
+		 */
+		public int getUpdateCount() {
+			return updateCount;
+		}
+
+		/**
+		 * Gets the error code of a suppressed error.
+		 *
+		 * @return the suppressed error code, {@code null} if not suppressed
+		 */
+		public Integer getSuppressedErrorCode() {
+			return suppressedErrorCode;
+		}
+
+		/**
+		 * Gets the time an entry was recorded in epoch milliseconds.
+		 *
+		 * @return the recorded time
+		 */
+		public long getRecorded() {
+			return recorded;
+		}
+	}
+}
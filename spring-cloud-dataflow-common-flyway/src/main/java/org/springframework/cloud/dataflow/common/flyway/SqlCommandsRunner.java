@@ -15,20 +15,59 @@
  */
 package org.springframework.cloud.dataflow.common.flyway;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.cloud.dataflow.common.flyway.CheckpointJournal.Checkpoint;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.core.StatementCallback;
 import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 
 /**
  * Simple utility class to run commands with a connection and possibly suppress
  * errors.
+ * <p>
+ * When batching is enabled, consecutive commands which don't handle execution
+ * themselves are sent to a database using {@link Statement#addBatch(String)}
+ * and {@link Statement#executeBatch()}. If a batch fails with an error code
+ * suppressed by one of its commands, that batch falls back to per-statement
+ * execution of commands which were not applied by a batch so that suppression
+ * behaves exactly as without batching.
+ * <p>
+ * Commands extending {@link AbstractConditionalSqlCommand} are checked against
+ * a {@link DatabaseMetaDataSnapshot} which is cached for a duration of a single
+ * {@code execute} call and skipped if their change is already present.
+ * <p>
+ * If a {@link CheckpointJournal} is set, executions given an id save a
+ * checkpoint after every completed command or chunk and a retried execution
+ * with the same id resumes from a last checkpoint.
+ * <p>
+ * Every executed command is reported to registered {@link SqlCommandListener}s
+ * and commands taking longer than a slow command threshold are logged as
+ * warnings.
+ * <p>
+ * If {@link DeferredSqlCommands} are set, deferrable commands are written to
+ * its journal table using an execution connection instead of executing those.
  *
  * @author Janne Valkealahti
  *
@@ -36,6 +75,73 @@ import org.springframework.util.ObjectUtils;
 public class SqlCommandsRunner {
 
 	private static final Logger logger = LoggerFactory.getLogger(SqlCommandsRunner.class);
+	private static final int DEFAULT_BATCH_SIZE = 50;
+	private final SuppressSQLErrorCodesTranslatorRegistry translators = SuppressSQLErrorCodesTranslatorRegistry.getInstance();
+	private final List<SqlCommandListener> listeners = new CopyOnWriteArrayList<>();
+	private boolean batchEnabled;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private CheckpointJournal checkpointJournal;
+	private Duration slowCommandThreshold;
+	private DeferredSqlCommands deferredCommands;
+
+	/**
+	 * Sets if consecutive commands should be executed using jdbc batches.
+	 * Defaults to {@code false}.
+	 *
+	 * @param batchEnabled the batch enabled flag
+	 */
+	public void setBatchEnabled(boolean batchEnabled) {
+		this.batchEnabled = batchEnabled;
+	}
+
+	/**
+	 * Sets the maximum number of commands sent in a single batch.
+	 *
+	 * @param batchSize the batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the checkpoint journal enabling resuming of executions given an id.
+	 *
+	 * @param checkpointJournal the checkpoint journal
+	 */
+	public void setCheckpointJournal(CheckpointJournal checkpointJournal) {
+		this.checkpointJournal = checkpointJournal;
+	}
+
+	/**
+	 * Adds a listener notified about executed commands.
+	 *
+	 * @param listener the sql command listener
+	 */
+	public void addListener(SqlCommandListener listener) {
+		Assert.notNull(listener, "listener must be set");
+		listeners.add(listener);
+	}
+
+	/**
+	 * Sets a threshold after which an executed command is logged as a slow
+	 * command with a warning level. Disabled by default.
+	 *
+	 * @param slowCommandThreshold the slow command threshold
+	 */
+	public void setSlowCommandThreshold(Duration slowCommandThreshold) {
+		this.slowCommandThreshold = slowCommandThreshold;
+	}
+
+	/**
+	 * Sets the deferred commands where deferrable commands are added instead
+	 * of executing those.
+	 *
+	 * @param deferredCommands the deferred commands
+	 */
+	public void setDeferredCommands(DeferredSqlCommands deferredCommands) {
+		this.deferredCommands = deferredCommands;
+	}
 
 	/**
 	 * Execute list of {@code SqlCommand} by suppressing errors if those are given
@@ -45,27 +151,465 @@ public class SqlCommandsRunner {
 	 * @param commands the sql commands
 	 */
 	public void execute(Connection connection, List<SqlCommand> commands) {
-		JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
-		SQLExceptionTranslator origExceptionTranslator = jdbcTemplate.getExceptionTranslator();
+		execute(null, connection, commands);
+	}
 
-		for (SqlCommand command : commands) {
-			if (command.canHandleInJdbcTemplate()) {
-				command.handle(jdbcTemplate, connection);
+	/**
+	 * Execute list of {@code SqlCommand} by suppressing errors if those are given
+	 * with a command. Given execution id identifies this list of commands in a
+	 * {@link CheckpointJournal}.
+	 *
+	 * @param executionId the execution id, may be {@code null}
+	 * @param connection the connection
+	 * @param commands the sql commands
+	 */
+	public void execute(String executionId, Connection connection, List<SqlCommand> commands) {
+		execute(executionId, connection, commands.iterator());
+	}
+
+	/**
+	 * Execute {@code SqlCommand}s from an iterator by suppressing errors if
+	 * those are given with a command. Commands are consumed one by one which
+	 * allows executing lazily produced commands, i.e. from a
+	 * {@link SqlScriptTokenizer}, without keeping them in memory.
+	 *
+	 * @param executionId the execution id, may be {@code null}
+	 * @param connection the connection
+	 * @param commands the sql commands
+	 */
+	public void execute(String executionId, Connection connection, Iterator<SqlCommand> commands) {
+		execute(executionId, connection, commands, true);
+	}
+
+	/**
+	 * Execute commands restored from {@link DeferredSqlCommands} without
+	 * deferring those again, even if this runner has deferred commands set.
+	 *
+	 * @param executionId the execution id, may be {@code null}
+	 * @param connection the connection
+	 * @param commands the sql commands
+	 */
+	void executeDeferred(String executionId, Connection connection, List<SqlCommand> commands) {
+		execute(executionId, connection, commands.iterator(), false);
+	}
+
+	private void execute(String executionId, Connection connection, Iterator<SqlCommand> commands,
+			boolean deferring) {
+		Execution execution = new Execution(executionId, connection);
+		int index = 0;
+		while (commands.hasNext()) {
+			SqlCommand command = commands.next();
+			if (execution.isCompleted(index)) {
+				logger.debug("Skipping command completed by a previous execution {}", command.getCommand());
+				index++;
+				continue;
+			}
+			if (deferring && deferredCommands != null && command.isDeferrable()) {
+				execution.flushBatch();
+				deferredCommands.add(execution.jdbcTemplate, execution.snapshot, executionId, command);
+			}
+			else if (command instanceof AbstractChunkedSqlCommand && execution.checkpointing) {
+				execution.flushBatch();
+				execution.executeChunked((AbstractChunkedSqlCommand) command, index);
+			}
+			else if (command instanceof AbstractConditionalSqlCommand) {
+				execution.executeConditional((AbstractConditionalSqlCommand) command);
+			}
+			else if (command.canHandleInJdbcTemplate()) {
+				execution.flushBatch();
+				execution.handleCommand(command);
+				execution.invalidate(command);
+			}
+			else if (batchEnabled) {
+				execution.addBatch(command, index);
+				index++;
+				continue;
 			}
 			else {
-				if(!ObjectUtils.isEmpty(command.getSuppressedErrorCodes())) {
-					jdbcTemplate.setExceptionTranslator(new SuppressSQLErrorCodesTranslator(command.getSuppressedErrorCodes()));
+				execution.executeCommand(command);
+				execution.invalidate(command);
+			}
+			execution.completed(index);
+			index++;
+		}
+		execution.flushBatch();
+		execution.finish();
+	}
+
+	/**
+	 * Checks if all given commands can be executed within a transaction.
+	 *
+	 * @param commands the sql commands
+	 * @return true, if commands can be executed in a transaction
+	 */
+	public static boolean canExecuteInTransaction(List<SqlCommand> commands) {
+		if (commands != null) {
+			for (SqlCommand command : commands) {
+				if (!command.canExecuteInTransaction()) {
+					return false;
 				}
-				try {
-					logger.debug("Executing command {}", command.getCommand());
-					jdbcTemplate.execute(command.getCommand());
-				} catch (SuppressDataAccessException e) {
-					logger.debug("Suppressing error {}", e);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * State of a single {@link #execute(Connection, List)} call.
+	 */
+	private class Execution {
+
+		private final Connection connection;
+		private final JdbcTemplate jdbcTemplate;
+		private final String databaseProductName;
+		private final SQLExceptionTranslator origExceptionTranslator;
+		private final DatabaseMetaDataSnapshot snapshot;
+		private final List<SqlCommand> batch = new ArrayList<>();
+		private final String executionId;
+		private final boolean checkpointing;
+		private final Checkpoint checkpoint;
+		private int batchIndex;
+
+		Execution(String executionId, Connection connection) {
+			this.executionId = executionId;
+			this.connection = connection;
+			this.snapshot = new DatabaseMetaDataSnapshot(connection);
+			this.jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+			this.databaseProductName = getDatabaseProductName(connection);
+			// shared translator so that error codes are not resolved from a database
+			// for every call.
+			this.origExceptionTranslator = translators.getTranslator(databaseProductName);
+			this.jdbcTemplate.setExceptionTranslator(origExceptionTranslator);
+			this.checkpointing = checkpointJournal != null && executionId != null;
+			if (checkpointing) {
+				checkpointJournal.initialize(jdbcTemplate, snapshot);
+				this.checkpoint = checkpointJournal.find(jdbcTemplate, executionId);
+				if (checkpoint != null) {
+					logger.info("Resuming execution {} from command {}", executionId, checkpoint.getCommandIndex());
 				}
+			}
+			else {
+				this.checkpoint = null;
+			}
+		}
+
+		boolean isCompleted(int index) {
+			return checkpoint != null && index < checkpoint.getCommandIndex();
+		}
+
+		void completed(int index) {
+			if (checkpointing) {
+				checkpointJournal.save(jdbcTemplate, executionId, new Checkpoint(index + 1, null));
+			}
+		}
+
+		void finish() {
+			if (checkpointing) {
+				checkpointJournal.delete(jdbcTemplate, executionId);
+			}
+		}
+
+		void executeChunked(AbstractChunkedSqlCommand command, int index) {
+			Long resumeFrom = null;
+			if (checkpoint != null && checkpoint.getCommandIndex() == index) {
+				resumeFrom = checkpoint.getChunkPosition();
+			}
+			long start = System.nanoTime();
+			command.handle(jdbcTemplate, connection, resumeFrom,
+					position -> checkpointJournal.save(jdbcTemplate, executionId, new Checkpoint(index, position)));
+			executed(command, System.nanoTime() - start, -1, null);
+			invalidate(command);
+		}
+
+		void handleCommand(SqlCommand command) {
+			long start = System.nanoTime();
+			int updateCount = -1;
+			if (command instanceof BatchSqlCommand) {
+				updateCount = ((BatchSqlCommand) command).handleBatch(jdbcTemplate, connection);
+			}
+			else {
+				command.handle(jdbcTemplate, connection);
+			}
+			executed(command, System.nanoTime() - start, updateCount, null);
+		}
+
+		void executeCommand(SqlCommand command) {
+			if(!ObjectUtils.isEmpty(command.getSuppressedErrorCodes())) {
+				jdbcTemplate.setExceptionTranslator(
+						translators.getTranslator(databaseProductName, command.getSuppressedErrorCodes()));
+			}
+			long start = System.nanoTime();
+			int updateCount = -1;
+			Integer suppressedErrorCode = null;
+			try {
+				logger.debug("Executing command {}", command.getCommand());
+				Integer count = jdbcTemplate.execute(new ExecuteStatementCallback(command.getCommand()));
+				updateCount = count != null ? count : -1;
+			} catch (SuppressDataAccessException e) {
+				logger.debug("Suppressing error {}", e);
+				suppressedErrorCode = e.getCause() instanceof SQLException
+						? ((SQLException) e.getCause()).getErrorCode()
+						: 0;
+			}
+			finally {
 				// restore original translator in case next command
 				// doesn't define suppressing codes.
 				jdbcTemplate.setExceptionTranslator(origExceptionTranslator);
 			}
+			executed(command, System.nanoTime() - start, updateCount, suppressedErrorCode);
+		}
+
+		void executed(SqlCommand command, long durationNanos, int updateCount, Integer suppressedErrorCode) {
+			Duration duration = Duration.ofNanos(durationNanos);
+			if (slowCommandThreshold != null && duration.compareTo(slowCommandThreshold) > 0) {
+				logger.warn("Slow command in {} took {} ms: {}", executionId, duration.toMillis(),
+						command.getCommand());
+			}
+			if (listeners.isEmpty()) {
+				return;
+			}
+			SqlCommandEvent event = new SqlCommandEvent(executionId, command, duration, updateCount,
+					suppressedErrorCode);
+			for (SqlCommandListener listener : listeners) {
+				try {
+					listener.executed(event);
+				}
+				catch (RuntimeException e) {
+					logger.warn("Sql command listener failed", e);
+				}
+			}
+		}
+
+		/**
+		 * Invalidate snapshot for tables a command may have changed, whole
+		 * snapshot is invalidated only if those can't be resolved.
+		 */
+		void invalidate(SqlCommand command) {
+			Set<String> tables = SqlTables.schemaChangedTables(command);
+			if (tables == null) {
+				snapshot.invalidate();
+				return;
+			}
+			for (String table : tables) {
+				snapshot.invalidate(table);
+			}
+		}
+
+		void executeConditional(AbstractConditionalSqlCommand command) {
+			// pending batch may change what is present in a database
+			flushBatch();
+			if (command.isPresent(snapshot)) {
+				logger.debug("Skipping command as its change is already present {}", command.getCommand());
+				return;
+			}
+			if (command.canHandleInJdbcTemplate()) {
+				handleCommand(command);
+			}
+			else {
+				executeCommand(command);
+			}
+			snapshot.invalidate(command.getTableName());
+		}
+
+		void addBatch(SqlCommand command, int index) {
+			batch.add(command);
+			batchIndex = index;
+			if (batch.size() >= batchSize) {
+				flushBatch();
+			}
+		}
+
+		void flushBatch() {
+			if (batch.isEmpty()) {
+				return;
+			}
+			if (batch.size() == 1) {
+				executeCommand(batch.get(0));
+				invalidate(batch.get(0));
+				batch.clear();
+				completed(batchIndex);
+				return;
+			}
+			Savepoint savepoint = null;
+			Statement statement = null;
+			try {
+				savepoint = createSavepoint(connection);
+				statement = connection.createStatement();
+				for (SqlCommand command : batch) {
+					logger.debug("Adding command to batch {}", command.getCommand());
+					statement.addBatch(command.getCommand());
+				}
+				long start = System.nanoTime();
+				int[] updateCounts = statement.executeBatch();
+				long durationNanos = (System.nanoTime() - start) / batch.size();
+				releaseSavepoint(connection, savepoint);
+				for (int i = 0; i < batch.size(); i++) {
+					int updateCount = updateCounts != null && i < updateCounts.length ? updateCounts[i] : -1;
+					executed(batch.get(i), durationNanos, updateCount, null);
+				}
+			}
+			catch (SQLException e) {
+				if (!isSuppressed(e)) {
+					throw translate(origExceptionTranslator, batchSql(batch), e);
+				}
+				// some of the commands may have been applied before the failure,
+				// re-run only failed ones unless whole batch can be rolled back.
+				int[] counts = null;
+				if (!rollbackSavepoint(connection, savepoint)) {
+					counts = e instanceof BatchUpdateException ? ((BatchUpdateException) e).getUpdateCounts()
+							: null;
+				}
+				boolean[] failed = failedCommands(counts, batch.size());
+				logger.debug("Batch failed with suppressed error, falling back to single commands");
+				for (int i = 0; i < batch.size(); i++) {
+					if (failed[i]) {
+						executeCommand(batch.get(i));
+					}
+					else {
+						executed(batch.get(i), 0, counts[i], null);
+					}
+				}
+			}
+			finally {
+				JdbcUtils.closeStatement(statement);
+				for (SqlCommand command : batch) {
+					invalidate(command);
+				}
+				batch.clear();
+			}
+			completed(batchIndex);
+		}
+
+		private boolean isSuppressed(SQLException e) {
+			SQLException current = e;
+			while (current != null) {
+				for (SqlCommand command : batch) {
+					if (!ObjectUtils.isEmpty(command.getSuppressedErrorCodes()) && translators
+							.getTranslator(databaseProductName, command.getSuppressedErrorCodes())
+							.isSuppressed(current.getErrorCode())) {
+						return true;
+					}
+				}
+				current = current.getNextException();
+			}
+			return false;
+		}
+	}
+
+	private static DataAccessException translate(SQLExceptionTranslator translator, String sql, SQLException e) {
+		DataAccessException dae = translator.translate("Batch", sql, e);
+		return (dae != null ? dae : new UncategorizedSQLException("Batch", sql, e));
+	}
+
+	/**
+	 * Resolve commands of a failed batch which were not applied. Drivers
+	 * stopping at a first error return counts only for commands before it,
+	 * drivers continuing after an error return counts for all commands with
+	 * failed ones marked with {@link Statement#EXECUTE_FAILED}. Without counts
+	 * all commands are considered failed.
+	 */
+	private static boolean[] failedCommands(int[] counts, int size) {
+		boolean[] failed = new boolean[size];
+		if (counts == null) {
+			Arrays.fill(failed, true);
+			return failed;
+		}
+		if (counts.length == size) {
+			for (int i = 0; i < size; i++) {
+				failed[i] = counts[i] == Statement.EXECUTE_FAILED;
+			}
+			return failed;
+		}
+		int resumeIndex = counts.length;
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == Statement.EXECUTE_FAILED) {
+				resumeIndex = i;
+				break;
+			}
+		}
+		Arrays.fill(failed, Math.min(resumeIndex, size), size, true);
+		return failed;
+	}
+
+	private static String getDatabaseProductName(Connection connection) {
+		try {
+			return connection.getMetaData().getDatabaseProductName();
+		}
+		catch (SQLException e) {
+			logger.debug("Unable to resolve database product name", e);
+			return null;
+		}
+	}
+
+	private static String batchSql(List<SqlCommand> batch) {
+		StringBuilder buf = new StringBuilder();
+		for (SqlCommand command : batch) {
+			if (buf.length() > 0) {
+				buf.append("; ");
+			}
+			buf.append(command.getCommand());
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * {@link StatementCallback} executing a sql and returning its update count.
+	 */
+	private static class ExecuteStatementCallback implements StatementCallback<Integer>, SqlProvider {
+
+		private final String sql;
+
+		ExecuteStatementCallback(String sql) {
+			this.sql = sql;
+		}
+
+		@Override
+		public Integer doInStatement(Statement stmt) throws SQLException {
+			stmt.execute(sql);
+			return stmt.getUpdateCount();
+		}
+
+		@Override
+		public String getSql() {
+			return sql;
+		}
+	}
+
+	static Savepoint createSavepoint(Connection connection) {
+		try {
+			if (!connection.getAutoCommit() && connection.getMetaData().supportsSavepoints()) {
+				return connection.setSavepoint();
+			}
+		}
+		catch (SQLException e) {
+			logger.debug("Unable to create savepoint", e);
+		}
+		return null;
+	}
+
+	static void releaseSavepoint(Connection connection, Savepoint savepoint) {
+		if (savepoint == null) {
+			return;
+		}
+		try {
+			connection.releaseSavepoint(savepoint);
+		}
+		catch (SQLException e) {
+			logger.debug("Unable to release savepoint", e);
+		}
+	}
+
+	static boolean rollbackSavepoint(Connection connection, Savepoint savepoint) {
+		if (savepoint == null) {
+			return false;
+		}
+		try {
+			connection.rollback(savepoint);
+			return true;
+		}
+		catch (SQLException e) {
+			// i.e. ddl having implicitly committed a transaction
+			logger.debug("Unable to rollback savepoint", e);
+			return false;
 		}
 	}
 }
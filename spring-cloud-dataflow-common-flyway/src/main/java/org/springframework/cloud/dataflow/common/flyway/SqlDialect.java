@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.sql.DataSource;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Enumeration of database dialects commands may need to know about. Dialect
+ * resolved for a {@link DataSource} is cached so that database metadata is
+ * read only once per data source.
+ */
+public enum SqlDialect {
+
+	POSTGRESQL,
+	ORACLE,
+	SQLSERVER,
+	MYSQL,
+	MARIADB,
+	DB2,
+	H2,
+	HSQLDB,
+	UNKNOWN;
+
+	private static final Map<DataSource, SqlDialect> dataSourceDialects = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * Resolve dialect from a database product name as returned from
+	 * {@link java.sql.DatabaseMetaData#getDatabaseProductName()}.
+	 *
+	 * @param databaseProductName the database product name
+	 * @return the sql dialect, never {@code null}
+	 */
+	public static SqlDialect fromProductName(String databaseProductName) {
+		if (!StringUtils.hasText(databaseProductName)) {
+			return UNKNOWN;
+		}
+		String name = databaseProductName.toLowerCase(Locale.ROOT);
+		if (name.startsWith("postgres")) {
+			return POSTGRESQL;
+		}
+		if (name.startsWith("oracle")) {
+			return ORACLE;
+		}
+		if (name.contains("sql server")) {
+			return SQLSERVER;
+		}
+		if (name.startsWith("mysql")) {
+			return MYSQL;
+		}
+		if (name.startsWith("mariadb")) {
+			return MARIADB;
+		}
+		if (name.startsWith("db2")) {
+			return DB2;
+		}
+		if (name.equals("h2")) {
+			return H2;
+		}
+		if (name.startsWith("hsql")) {
+			return HSQLDB;
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * Resolve dialect of a data source, reading its metadata only when a
+	 * data source is seen first time.
+	 *
+	 * @param dataSource the data source
+	 * @return the sql dialect, never {@code null}
+	 */
+	public static SqlDialect fromDataSource(DataSource dataSource) {
+		SqlDialect dialect = dataSourceDialects.get(dataSource);
+		if (dialect == null) {
+			try (Connection connection = dataSource.getConnection()) {
+				dialect = fromDataSource(dataSource, connection);
+			}
+			catch (SQLException e) {
+				// don't cache as failure may be temporary
+				return UNKNOWN;
+			}
+		}
+		return dialect;
+	}
+
+	/**
+	 * Resolve dialect of a data source using its already open connection
+	 * when a data source is seen first time.
+	 *
+	 * @param dataSource the data source, may be {@code null}
+	 * @param connection the connection of a data source
+	 * @return the sql dialect, never {@code null}
+	 */
+	public static SqlDialect fromDataSource(DataSource dataSource, Connection connection) {
+		if (dataSource == null) {
+			return fromConnection(connection);
+		}
+		return dataSourceDialects.computeIfAbsent(dataSource, key -> fromConnection(connection));
+	}
+
+	/**
+	 * Resolve dialect from a connection metadata.
+	 *
+	 * @param connection the connection
+	 * @return the sql dialect, never {@code null}
+	 */
+	public static SqlDialect fromConnection(Connection connection) {
+		try {
+			return fromProductName(connection.getMetaData().getDatabaseProductName());
+		}
+		catch (SQLException e) {
+			return UNKNOWN;
+		}
+	}
+}
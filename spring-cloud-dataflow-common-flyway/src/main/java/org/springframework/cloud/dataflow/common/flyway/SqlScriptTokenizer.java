@@ -0,0 +1,377 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Streaming tokenizer lazily reading {@link SqlCommand}s from a sql script.
+ * Only a statement currently being read is kept in memory so scripts of any
+ * size can be executed with a {@link SqlCommandsRunner}.
+ * <p>
+ * Tokenizer skips line and block comments, keeps quoted literals and
+ * identifiers intact and knows about dialect specific constructs, i.e.
+ * {@code $$} quoted bodies with PostgreSQL, PL/SQL blocks terminated with a
+ * {@code /} line with Oracle and {@code DELIMITER} directives and {@code #}
+ * comments with MySQL.
+ */
+public class SqlScriptTokenizer implements Iterator<SqlCommand>, Closeable {
+
+	private static final Pattern PLSQL_BLOCK = Pattern.compile(
+			"^(CREATE\\s+(OR\\s+REPLACE\\s+)?((NON)?EDITIONABLE\\s+)?(FUNCTION|PROCEDURE|PACKAGE|TRIGGER|TYPE)"
+					+ "|DECLARE|BEGIN)\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final String DELIMITER_DIRECTIVE = "DELIMITER";
+	private static final String DEFAULT_DELIMITER = ";";
+	private static final int EOF = -1;
+	private final Reader reader;
+	private final SqlDialect dialect;
+	// characters read ahead and pushed back, next character is the last one
+	private final StringBuilder pushback = new StringBuilder();
+	private String delimiter = DEFAULT_DELIMITER;
+	private String next;
+	private boolean done;
+
+	/**
+	 * Instantiates a new sql script tokenizer.
+	 *
+	 * @param reader the script reader
+	 * @param dialect the sql dialect
+	 */
+	public SqlScriptTokenizer(Reader reader, SqlDialect dialect) {
+		Assert.notNull(reader, "reader must be set");
+		this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+		this.dialect = dialect != null ? dialect : SqlDialect.UNKNOWN;
+	}
+
+	/**
+	 * Convenience method returning new instance reading an utf-8 encoded
+	 * resource.
+	 *
+	 * @param resource the script resource
+	 * @param dialect the sql dialect
+	 * @return the sql script tokenizer
+	 */
+	public static SqlScriptTokenizer from(Resource resource, SqlDialect dialect) {
+		try {
+			return new SqlScriptTokenizer(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8),
+					dialect);
+		}
+		catch (IOException e) {
+			throw new DataFlowSchemaMigrationException("Unable to open sql script " + resource, e);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && !done) {
+			try {
+				next = readStatement();
+			}
+			catch (IOException e) {
+				throw new DataFlowSchemaMigrationException("Unable to read sql script", e);
+			}
+			done = next == null;
+		}
+		return next != null;
+	}
+
+	@Override
+	public SqlCommand next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		SqlCommand command = SqlCommand.from(next);
+		next = null;
+		return command;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private String readStatement() throws IOException {
+		StringBuilder sql = new StringBuilder();
+		boolean lineStart = true;
+		boolean checkDirective = true;
+		Boolean plsqlBlock = null;
+		while (true) {
+			if (checkDirective && !StringUtils.hasText(sql) && isMySql()) {
+				checkDirective = false;
+				if (readDelimiterDirective()) {
+					checkDirective = true;
+					continue;
+				}
+			}
+			int c = read();
+			if (c == EOF) {
+				break;
+			}
+			char ch = (char) c;
+			if (ch == '\n') {
+				sql.append(ch);
+				lineStart = true;
+				checkDirective = true;
+				continue;
+			}
+			if (lineStart && Character.isWhitespace(ch)) {
+				sql.append(ch);
+				continue;
+			}
+			boolean atLineStart = lineStart;
+			lineStart = false;
+			checkDirective = false;
+			if ((ch == '-' && peek() == '-') || (ch == '#' && isMySql())) {
+				skipLine();
+				sql.append('\n');
+				lineStart = true;
+				checkDirective = true;
+			}
+			else if (ch == '/' && peek() == '*') {
+				read();
+				if (peek() == '+') {
+					// optimizer hint, needs to stay in a statement
+					sql.append("/*");
+					copyUntil(sql, "*/");
+				}
+				else {
+					skipUntil("*/");
+					sql.append(' ');
+				}
+			}
+			else if (ch == '/' && atLineStart && dialect == SqlDialect.ORACLE && skipBlankLine()) {
+				if (StringUtils.hasText(sql)) {
+					return sql.toString().trim();
+				}
+				lineStart = true;
+				checkDirective = true;
+			}
+			else if (ch == '\'') {
+				sql.append(ch);
+				copyQuoted(sql, ch, isMySql());
+			}
+			else if (ch == '"' || (ch == '`' && isMySql())) {
+				sql.append(ch);
+				copyQuoted(sql, ch, false);
+			}
+			else if (ch == '$' && dialect == SqlDialect.POSTGRESQL) {
+				String tag = readDollarTag();
+				sql.append(tag != null ? tag : "$");
+				if (tag != null) {
+					copyUntil(sql, tag);
+				}
+			}
+			else if (matchesDelimiter(ch)) {
+				if (dialect == SqlDialect.ORACLE && DEFAULT_DELIMITER.equals(delimiter)) {
+					if (plsqlBlock == null) {
+						plsqlBlock = PLSQL_BLOCK.matcher(sql.toString().trim()).find();
+					}
+					if (plsqlBlock) {
+						// statements within a block, block ends with a slash line
+						sql.append(ch);
+						continue;
+					}
+				}
+				if (StringUtils.hasText(sql)) {
+					return sql.toString().trim();
+				}
+				sql.setLength(0);
+				plsqlBlock = null;
+			}
+			else {
+				sql.append(ch);
+			}
+		}
+		return StringUtils.hasText(sql) ? sql.toString().trim() : null;
+	}
+
+	private boolean isMySql() {
+		return dialect == SqlDialect.MYSQL || dialect == SqlDialect.MARIADB;
+	}
+
+	private int read() throws IOException {
+		int length = pushback.length();
+		if (length > 0) {
+			char c = pushback.charAt(length - 1);
+			pushback.setLength(length - 1);
+			return c;
+		}
+		return reader.read();
+	}
+
+	private int peek() throws IOException {
+		int c = read();
+		if (c != EOF) {
+			unread((char) c);
+		}
+		return c;
+	}
+
+	private void unread(char c) {
+		pushback.append(c);
+	}
+
+	private void unread(CharSequence chars) {
+		for (int i = chars.length() - 1; i >= 0; i--) {
+			pushback.append(chars.charAt(i));
+		}
+	}
+
+	private boolean matchesDelimiter(char ch) throws IOException {
+		if (ch != delimiter.charAt(0)) {
+			return false;
+		}
+		StringBuilder read = new StringBuilder();
+		for (int i = 1; i < delimiter.length(); i++) {
+			int c = read();
+			if (c == EOF) {
+				break;
+			}
+			read.append((char) c);
+			if (c != delimiter.charAt(i)) {
+				break;
+			}
+		}
+		if (read.length() == delimiter.length() - 1 && delimiter.endsWith(read.toString())) {
+			return true;
+		}
+		unread(read);
+		return false;
+	}
+
+	private void skipLine() throws IOException {
+		int c;
+		do {
+			c = read();
+		}
+		while (c != EOF && c != '\n');
+	}
+
+	private boolean skipBlankLine() throws IOException {
+		StringBuilder read = new StringBuilder();
+		int c;
+		while ((c = read()) != EOF) {
+			read.append((char) c);
+			if (c == '\n') {
+				break;
+			}
+			if (!Character.isWhitespace(c)) {
+				unread(read);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void skipUntil(String terminator) throws IOException {
+		int matched = 0;
+		int c;
+		while (matched < terminator.length() && (c = read()) != EOF) {
+			matched = c == terminator.charAt(matched) ? matched + 1 : (c == terminator.charAt(0) ? 1 : 0);
+		}
+	}
+
+	private void copyUntil(StringBuilder sql, String terminator) throws IOException {
+		int matched = 0;
+		int c;
+		while (matched < terminator.length() && (c = read()) != EOF) {
+			sql.append((char) c);
+			matched = c == terminator.charAt(matched) ? matched + 1 : (c == terminator.charAt(0) ? 1 : 0);
+		}
+	}
+
+	private void copyQuoted(StringBuilder sql, char quote, boolean backslashEscapes) throws IOException {
+		int c;
+		while ((c = read()) != EOF) {
+			sql.append((char) c);
+			if (c == quote) {
+				return;
+			}
+			if (c == '\\' && backslashEscapes) {
+				c = read();
+				if (c == EOF) {
+					return;
+				}
+				sql.append((char) c);
+			}
+		}
+	}
+
+	private String readDollarTag() throws IOException {
+		StringBuilder read = new StringBuilder();
+		int c;
+		while ((c = read()) != EOF) {
+			read.append((char) c);
+			if (c == '$') {
+				// positional parameters like $1 are not tags
+				if (read.length() > 1 && Character.isDigit(read.charAt(0))) {
+					break;
+				}
+				return "$" + read;
+			}
+			if (!Character.isLetterOrDigit(c) && c != '_') {
+				break;
+			}
+		}
+		unread(read);
+		return null;
+	}
+
+	private boolean readDelimiterDirective() throws IOException {
+		StringBuilder read = new StringBuilder();
+		int c = read();
+		while (c != EOF && c != '\n' && Character.isWhitespace(c)) {
+			read.append((char) c);
+			c = read();
+		}
+		int keyword = 0;
+		while (c != EOF && keyword < DELIMITER_DIRECTIVE.length()
+				&& Character.toUpperCase(c) == DELIMITER_DIRECTIVE.charAt(keyword)) {
+			read.append((char) c);
+			keyword++;
+			c = read();
+		}
+		if (c != EOF) {
+			read.append((char) c);
+		}
+		if (keyword < DELIMITER_DIRECTIVE.length() || c == EOF || c == '\n' || !Character.isWhitespace(c)) {
+			unread(read);
+			return false;
+		}
+		StringBuilder value = new StringBuilder();
+		while ((c = read()) != EOF && c != '\n') {
+			value.append((char) c);
+		}
+		String newDelimiter = value.toString().trim();
+		if (StringUtils.hasText(newDelimiter)) {
+			delimiter = newDelimiter;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * Utility methods finding tables a {@link SqlCommand} changes.
+ */
+final class SqlTables {
+
+	private static final Pattern TABLE_PATTERN = Pattern.compile(
+			"\\b(?:CREATE\\s+TABLE(?:\\s+IF\\s+NOT\\s+EXISTS)?|ALTER\\s+TABLE(?:\\s+ONLY)?|INSERT\\s+INTO"
+					+ "|DELETE\\s+FROM|CREATE\\s+(?:UNIQUE\\s+)?INDEX(?:\\s+CONCURRENTLY)?(?:\\s+IF\\s+NOT\\s+EXISTS)?"
+					+ "\\s+\\S+\\s+ON)\\s+([\\w.$\"`\\[\\]]+)",
+			Pattern.CASE_INSENSITIVE);
+	// update only at a statement start, not in ON UPDATE, FOR UPDATE or triggers
+	private static final Pattern UPDATE_PATTERN = Pattern.compile(
+			"^UPDATE\\s+(?:ONLY\\s+)?([\\w.$\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern LEADING_COMMENTS_PATTERN = Pattern.compile("^(?:\\s+|--[^\\n]*\\n?|/\\*.*?\\*/)*",
+			Pattern.DOTALL);
+	private static final Pattern DATA_CHANGE_PATTERN = Pattern.compile(
+			"^(?:INSERT|UPDATE|DELETE|MERGE|SELECT|SET|ANALYZE)\\b", Pattern.CASE_INSENSITIVE);
+	private static final Pattern RENAME_PATTERN = Pattern.compile("\\bRENAME\\b", Pattern.CASE_INSENSITIVE);
+
+	private SqlTables() {
+	}
+
+	/**
+	 * Find tables changed by a command.
+	 *
+	 * @param command the sql command
+	 * @return the changed table names
+	 */
+	static Set<String> changedTables(SqlCommand command) {
+		Set<String> tables = new LinkedHashSet<>();
+		if (command instanceof AbstractConditionalSqlCommand) {
+			tables.add(((AbstractConditionalSqlCommand) command).getTableName());
+		}
+		else if (command instanceof AbstractChunkedSqlCommand) {
+			tables.add(((AbstractChunkedSqlCommand) command).getTableName());
+		}
+		else if (StringUtils.hasText(command.getCommand())) {
+			Matcher matcher = UPDATE_PATTERN.matcher(stripLeadingComments(command.getCommand()));
+			if (matcher.find()) {
+				tables.add(unquote(matcher.group(1)));
+			}
+			matcher = TABLE_PATTERN.matcher(command.getCommand());
+			while (matcher.find()) {
+				tables.add(unquote(matcher.group(1)));
+			}
+		}
+		return tables;
+	}
+
+	/**
+	 * Find tables whose metadata a command may change.
+	 *
+	 * @param command the sql command
+	 * @return the table names, empty if command doesn't change a schema,
+	 *         {@code null} if changed tables can't be resolved
+	 */
+	static Set<String> schemaChangedTables(SqlCommand command) {
+		if (command instanceof AbstractChunkedSqlCommand) {
+			return Collections.emptySet();
+		}
+		if (command instanceof AbstractConditionalSqlCommand) {
+			return changedTables(command);
+		}
+		if (!StringUtils.hasText(command.getCommand())) {
+			return null;
+		}
+		String sql = stripLeadingComments(command.getCommand());
+		if (DATA_CHANGE_PATTERN.matcher(sql).find()) {
+			return Collections.emptySet();
+		}
+		if (RENAME_PATTERN.matcher(sql).find()) {
+			// new table name is not captured
+			return null;
+		}
+		Set<String> tables = changedTables(command);
+		return tables.isEmpty() ? null : tables;
+	}
+
+	private static String stripLeadingComments(String sql) {
+		return LEADING_COMMENTS_PATTERN.matcher(sql).replaceFirst("");
+	}
+
+	private static String unquote(String table) {
+		return table.replaceAll("[\"`\\[\\]]", "");
+	}
+}
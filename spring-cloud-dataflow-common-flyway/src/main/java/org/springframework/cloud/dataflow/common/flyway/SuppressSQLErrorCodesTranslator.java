@@ -17,12 +17,14 @@ package org.springframework.cloud.dataflow.common.flyway;
 
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import org.slf4j.LoggerFactory;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLErrorCodes;
 import org.springframework.util.Assert;
 
 /**
@@ -35,7 +37,7 @@ import org.springframework.util.Assert;
 public class SuppressSQLErrorCodesTranslator extends SQLErrorCodeSQLExceptionTranslator {
 
 	private static final org.slf4j.Logger logger = LoggerFactory.getLogger(SuppressSQLErrorCodesTranslator.class);
-	private final List<Integer> errorCodes;
+	private final int[] errorCodes;
 
 	/**
 	 * Instantiates a new suppress SQL error codes translator.
@@ -52,17 +54,53 @@ public class SuppressSQLErrorCodesTranslator extends SQLErrorCodeSQLExceptionTra
 	 * @param errorCodes the error codes
 	 */
 	public SuppressSQLErrorCodesTranslator(List<Integer> errorCodes) {
+		this(errorCodes, null);
+	}
+
+	/**
+	 * Instantiates a new suppress SQL error codes translator using already
+	 * resolved error codes for a database.
+	 *
+	 * @param errorCodes the error codes
+	 * @param sqlErrorCodes the resolved sql error codes, may be {@code null}
+	 */
+	public SuppressSQLErrorCodesTranslator(Collection<Integer> errorCodes, SQLErrorCodes sqlErrorCodes) {
 		super();
 		Assert.notNull(errorCodes, "errorCodes must be set");
-		this.errorCodes = errorCodes;
+		this.errorCodes = toSortedArray(errorCodes);
+		if (sqlErrorCodes != null) {
+			setSqlErrorCodes(sqlErrorCodes);
+		}
+	}
+
+	/**
+	 * Checks if given error code is suppressed by this translator.
+	 *
+	 * @param errorCode the error code
+	 * @return true, if error code is suppressed
+	 */
+	public boolean isSuppressed(int errorCode) {
+		return Arrays.binarySearch(errorCodes, errorCode) >= 0;
 	}
 
 	@Override
 	protected DataAccessException customTranslate(String task, String sql, SQLException sqlEx) {
-		logger.debug("Checking sql error code {} against {}", sqlEx.getErrorCode(), errorCodes);
-		if (errorCodes.contains(sqlEx.getErrorCode())) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Checking sql error code {} against {}", sqlEx.getErrorCode(), Arrays.toString(errorCodes));
+		}
+		if (isSuppressed(sqlEx.getErrorCode())) {
 			return new SuppressDataAccessException(task, sqlEx);
 		}
 		return super.customTranslate(task, sql, sqlEx);
 	}
+
+	static int[] toSortedArray(Collection<Integer> errorCodes) {
+		int[] codes = new int[errorCodes.size()];
+		int i = 0;
+		for (Integer code : errorCodes) {
+			codes[i++] = code;
+		}
+		Arrays.sort(codes);
+		return codes;
+	}
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.jdbc.support.SQLErrorCodes;
+import org.springframework.jdbc.support.SQLErrorCodesFactory;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * Registry sharing {@link SuppressSQLErrorCodesTranslator} instances keyed by
+ * a database product name and a set of suppressed error codes. Translators are
+ * thread safe so a single instance is reused across all commands and
+ * migrations, which avoids resolving {@link SQLErrorCodes} for every command.
+ */
+public final class SuppressSQLErrorCodesTranslatorRegistry {
+
+	private static final SuppressSQLErrorCodesTranslatorRegistry instance = new SuppressSQLErrorCodesTranslatorRegistry();
+	private final Map<TranslatorKey, SuppressSQLErrorCodesTranslator> translators = new ConcurrentHashMap<>();
+
+	private SuppressSQLErrorCodesTranslatorRegistry() {
+	}
+
+	/**
+	 * Gets the shared registry instance.
+	 *
+	 * @return the registry
+	 */
+	public static SuppressSQLErrorCodesTranslatorRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets a translator for a database product which doesn't suppress any
+	 * errors.
+	 *
+	 * @param databaseProductName the database product name, may be {@code null}
+	 * @return the translator
+	 */
+	public SuppressSQLErrorCodesTranslator getTranslator(String databaseProductName) {
+		return getTranslator(databaseProductName, Collections.<Integer>emptyList());
+	}
+
+	/**
+	 * Gets a translator for a database product suppressing given error codes.
+	 *
+	 * @param databaseProductName the database product name, may be {@code null}
+	 * @param errorCodes the suppressed error codes
+	 * @return the translator
+	 */
+	public SuppressSQLErrorCodesTranslator getTranslator(String databaseProductName, Collection<Integer> errorCodes) {
+		TranslatorKey key = new TranslatorKey(databaseProductName,
+				SuppressSQLErrorCodesTranslator.toSortedArray(errorCodes));
+		return translators.computeIfAbsent(key, k -> new SuppressSQLErrorCodesTranslator(errorCodes,
+				resolveSqlErrorCodes(databaseProductName)));
+	}
+
+	private static SQLErrorCodes resolveSqlErrorCodes(String databaseProductName) {
+		if (databaseProductName == null) {
+			return null;
+		}
+		// factory caches codes per product name and doesn't touch a database
+		return SQLErrorCodesFactory.getInstance().getErrorCodes(databaseProductName);
+	}
+
+	private static final class TranslatorKey {
+
+		private final String databaseProductName;
+		private final int[] errorCodes;
+
+		TranslatorKey(String databaseProductName, int[] errorCodes) {
+			this.databaseProductName = databaseProductName;
+			this.errorCodes = errorCodes;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof TranslatorKey)) {
+				return false;
+			}
+			TranslatorKey otherKey = (TranslatorKey) other;
+			return ObjectUtils.nullSafeEquals(databaseProductName, otherKey.databaseProductName)
+					&& Arrays.equals(errorCodes, otherKey.errorCodes);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * ObjectUtils.nullSafeHashCode(databaseProductName) + Arrays.hashCode(errorCodes);
+		}
+	}
+}
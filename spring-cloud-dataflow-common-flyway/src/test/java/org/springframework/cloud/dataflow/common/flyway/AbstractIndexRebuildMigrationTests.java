@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class AbstractIndexRebuildMigrationTests {
+
+	private EmbeddedDatabase database;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE PARENT (ID BIGINT PRIMARY KEY)");
+		jdbcTemplate.execute("CREATE TABLE CHILD (ID BIGINT PRIMARY KEY, PARENT_ID BIGINT, A INT, B INT)");
+		jdbcTemplate.execute("CREATE INDEX IX_CHILD_PARENT ON CHILD (PARENT_ID)");
+		jdbcTemplate.execute("CREATE INDEX IX_CHILD_A ON CHILD (A DESC)");
+		jdbcTemplate.execute("CREATE INDEX IX_CHILD_B ON CHILD (B)");
+		jdbcTemplate.execute("ALTER TABLE CHILD ADD CONSTRAINT FK_CHILD_PARENT FOREIGN KEY (PARENT_ID) "
+				+ "REFERENCES PARENT (ID)");
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void keepsIndexBackingForeignKey() throws Exception {
+		IndexProbeSqlCommand probe = new IndexProbeSqlCommand();
+		Configuration configuration = mock(Configuration.class);
+		when(configuration.getDataSource()).thenReturn(database);
+		try (Connection connection = database.getConnection()) {
+			Context context = mock(Context.class);
+			when(context.getConfiguration()).thenReturn(configuration);
+			when(context.getConnection()).thenReturn(connection);
+			new ChildMigration(probe).migrate(context);
+
+			assertThat(probe.present).containsEntry("IX_CHILD_A", false).containsEntry("IX_CHILD_PARENT", true);
+			DatabaseMetaDataSnapshot snapshot = new DatabaseMetaDataSnapshot(connection);
+			assertThat(snapshot.hasIndex("CHILD", "IX_CHILD_A")).isTrue();
+			assertThat(snapshot.hasIndex("CHILD", "IX_CHILD_PARENT")).isTrue();
+		}
+	}
+
+	@Test
+	public void recreatesRemainingIndexesWhenOneFails() throws Exception {
+		assertRecreatesRemainingIndexes(1);
+	}
+
+	@Test
+	public void recreatesRemainingIndexesInParallelWhenOneFails() throws Exception {
+		assertRecreatesRemainingIndexes(2);
+	}
+
+	private void assertRecreatesRemainingIndexes(int workers) throws Exception {
+		Configuration configuration = mock(Configuration.class);
+		when(configuration.getDataSource()).thenReturn(database);
+		try (Connection connection = database.getConnection()) {
+			Context context = mock(Context.class);
+			when(context.getConfiguration()).thenReturn(configuration);
+			when(context.getConnection()).thenReturn(connection);
+			ColumnDroppingMigration migration = new ColumnDroppingMigration(workers);
+
+			assertThatThrownBy(() -> migration.migrate(context))
+					.isInstanceOf(DataFlowSchemaMigrationException.class)
+					.hasMessageContaining("Unable to recreate 1 of 2 secondary indexes of CHILD");
+			DatabaseMetaDataSnapshot snapshot = new DatabaseMetaDataSnapshot(connection);
+			assertThat(snapshot.hasIndex("CHILD", "IX_CHILD_A")).isFalse();
+			assertThat(snapshot.hasIndex("CHILD", "IX_CHILD_B")).isTrue();
+			assertThat(snapshot.hasIndex("CHILD", "IX_CHILD_PARENT")).isTrue();
+		}
+	}
+
+	private static class ColumnDroppingMigration extends AbstractIndexRebuildMigration {
+
+		ColumnDroppingMigration(int workers) {
+			super("CHILD", Arrays.asList(SqlCommand.from("ALTER TABLE CHILD DROP COLUMN A")));
+			setWorkers(workers);
+		}
+	}
+
+	private static class ChildMigration extends AbstractIndexRebuildMigration {
+
+		ChildMigration(SqlCommand probe) {
+			super("CHILD", Arrays.asList(SqlCommand.from("INSERT INTO CHILD (ID, A) VALUES (1, 1)"), probe));
+		}
+	}
+
+	private static class IndexProbeSqlCommand extends SqlCommand {
+
+		private final Map<String, Boolean> present = new HashMap<>();
+
+		@Override
+		public boolean canHandleInJdbcTemplate() {
+			return true;
+		}
+
+		@Override
+		public void handle(JdbcTemplate jdbcTemplate, Connection connection) {
+			DatabaseMetaDataSnapshot snapshot = new DatabaseMetaDataSnapshot(connection);
+			present.put("IX_CHILD_A", snapshot.hasIndex("CHILD", "IX_CHILD_A"));
+			present.put("IX_CHILD_PARENT", snapshot.hasIndex("CHILD", "IX_CHILD_PARENT"));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.flywaydb.core.api.configuration.Configuration;
+import org.flywaydb.core.api.migration.Context;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class AbstractTransformMigrationTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE T (ID BIGINT PRIMARY KEY, NAME VARCHAR(20))");
+		for (long id = 1; id <= 10; id++) {
+			jdbcTemplate.update("INSERT INTO T (ID, NAME) VALUES (?, ?)", id * 2, "name" + id);
+		}
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void transformsAllRowsInPages() throws Exception {
+		migrate(new UpperCaseMigration(1));
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T WHERE NAME LIKE 'NAME%'", Integer.class))
+				.isEqualTo(10);
+	}
+
+	@Test
+	public void transformsAllRowsInPagesWithWorkers() throws Exception {
+		migrate(new UpperCaseMigration(3));
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T WHERE NAME LIKE 'NAME%'", Integer.class))
+				.isEqualTo(10);
+	}
+
+	private void migrate(AbstractTransformMigration migration) throws Exception {
+		Configuration configuration = mock(Configuration.class);
+		when(configuration.getDataSource()).thenReturn(database);
+		try (Connection connection = database.getConnection()) {
+			Context context = mock(Context.class);
+			when(context.getConfiguration()).thenReturn(configuration);
+			when(context.getConnection()).thenReturn(connection);
+			migration.migrate(context);
+		}
+	}
+
+	private static class UpperCaseMigration extends AbstractTransformMigration {
+
+		UpperCaseMigration(int workers) {
+			super("T", "ID", "NAME", "UPDATE T SET NAME = ? WHERE ID = ?");
+			setBatchSize(3);
+			setWorkers(workers);
+		}
+
+		@Override
+		protected Object[] transform(ResultSet rs) throws SQLException {
+			return new Object[] { rs.getString(2).toUpperCase(), rs.getLong(1) };
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class BatchSqlCommandTests {
+
+	private Connection connection;
+	private PreparedStatement statement;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setup() throws SQLException {
+		connection = mock(Connection.class);
+		statement = mock(PreparedStatement.class);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		DataSource dataSource = mock(DataSource.class);
+		when(dataSource.getConnection()).thenReturn(connection);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	@Test
+	public void rowsBelowBatchSizeExecuteOneBatch() throws SQLException {
+		assertThat(new BatchSqlCommand("INSERT INTO T (ID) VALUES (?)", rows(3), 5).handleBatch(jdbcTemplate,
+				connection)).isEqualTo(3);
+		verify(statement, times(3)).addBatch();
+		verify(statement, times(1)).executeBatch();
+	}
+
+	@Test
+	public void rowsEqualToBatchSizeExecuteOneBatch() throws SQLException {
+		assertThat(new BatchSqlCommand("INSERT INTO T (ID) VALUES (?)", rows(5), 5).handleBatch(jdbcTemplate,
+				connection)).isEqualTo(5);
+		verify(statement, times(5)).addBatch();
+		verify(statement, times(1)).executeBatch();
+	}
+
+	@Test
+	public void rowsAboveBatchSizeExecuteSeveralBatches() throws SQLException {
+		assertThat(new BatchSqlCommand("INSERT INTO T (ID) VALUES (?)", rows(11), 5).handleBatch(jdbcTemplate,
+				connection)).isEqualTo(11);
+		verify(statement, times(11)).addBatch();
+		verify(statement, times(3)).executeBatch();
+	}
+
+	@Test
+	public void noRowsExecuteNoBatch() throws SQLException {
+		assertThat(new BatchSqlCommand("INSERT INTO T (ID) VALUES (?)", rows(0), 5).handleBatch(jdbcTemplate,
+				connection)).isEqualTo(0);
+		verify(statement, never()).executeBatch();
+	}
+
+	@Test
+	public void streamIsSuppliedAndClosedOnEveryExecution() throws SQLException {
+		AtomicInteger supplied = new AtomicInteger();
+		AtomicInteger closed = new AtomicInteger();
+		BatchSqlCommand command = BatchSqlCommand.from("INSERT INTO T (ID) VALUES (?)", () -> {
+			supplied.incrementAndGet();
+			return IntStream.rangeClosed(1, 3).mapToObj(id -> new Object[] { id }).onClose(closed::incrementAndGet);
+		}, 2);
+		assertThat(command.handleBatch(jdbcTemplate, connection)).isEqualTo(3);
+		assertThat(command.handleBatch(jdbcTemplate, connection)).isEqualTo(3);
+		assertThat(supplied.get()).isEqualTo(2);
+		assertThat(closed.get()).isEqualTo(2);
+		verify(statement, times(4)).executeBatch();
+	}
+
+	@Test
+	public void failedBatchClosesStreamAndThrows() throws SQLException {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true).build();
+		try (Connection h2 = database.getConnection()) {
+			JdbcTemplate template = new JdbcTemplate(database);
+			template.execute("CREATE TABLE T (ID INT PRIMARY KEY)");
+			AtomicInteger closed = new AtomicInteger();
+			BatchSqlCommand command = BatchSqlCommand.from("INSERT INTO T (ID) VALUES (?)",
+					() -> Stream.of(new Object[] { 1 }, new Object[] { 1 }).onClose(closed::incrementAndGet), 10);
+			assertThatThrownBy(() -> command.handleBatch(template, h2))
+					.isInstanceOf(DataIntegrityViolationException.class);
+			assertThat(closed.get()).isEqualTo(1);
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+	@Test
+	public void runnerReportsRowCountToListeners() throws SQLException {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true).build();
+		List<SqlCommandEvent> events = new ArrayList<>();
+		try (Connection h2 = database.getConnection()) {
+			SqlCommandsRunner runner = new SqlCommandsRunner();
+			runner.addListener(events::add);
+			runner.execute("V1", h2, Arrays.asList(SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)"),
+					new BatchSqlCommand("INSERT INTO T (ID) VALUES (?)", rows(7), 3)));
+			assertThat(new JdbcTemplate(database).queryForObject("SELECT COUNT(*) FROM T", Integer.class))
+					.isEqualTo(7);
+		}
+		finally {
+			database.shutdown();
+		}
+		assertThat(events).hasSize(2);
+		assertThat(events.get(1).getUpdateCount()).isEqualTo(7);
+	}
+
+	private static List<Object[]> rows(int count) {
+		List<Object[]> rows = new ArrayList<>();
+		for (int id = 1; id <= count; id++) {
+			rows.add(new Object[] { id });
+		}
+		return rows;
+	}
+}
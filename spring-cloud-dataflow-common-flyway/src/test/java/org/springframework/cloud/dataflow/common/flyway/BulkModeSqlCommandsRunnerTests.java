@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class BulkModeSqlCommandsRunnerTests {
+
+	private Connection connection;
+	private Statement statement;
+
+	@Test
+	public void mysqlSettingsAreRestoredOnFailure() throws SQLException {
+		mockConnection("MySQL");
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.next()).thenReturn(true);
+		when(rs.getInt(1)).thenReturn(1);
+		when(rs.getInt(2)).thenReturn(1);
+		when(statement.executeQuery("SELECT @@SESSION.unique_checks, @@SESSION.foreign_key_checks")).thenReturn(rs);
+
+		assertThatThrownBy(() -> new BulkModeSqlCommandsRunner().execute(connection,
+				Arrays.asList(new FailingCommand()))).isInstanceOf(IllegalStateException.class);
+
+		InOrder order = inOrder(connection, statement);
+		order.verify(statement).execute("SET unique_checks = 0");
+		order.verify(statement).execute("SET foreign_key_checks = 0");
+		order.verify(connection).setAutoCommit(false);
+		order.verify(connection).rollback();
+		order.verify(connection).setAutoCommit(true);
+		order.verify(statement).execute("SET unique_checks = 1");
+		order.verify(statement).execute("SET foreign_key_checks = 1");
+		verify(connection, never()).commit();
+	}
+
+	@Test
+	public void postgresSettingsAreRestoredAfterCommit() throws SQLException {
+		mockConnection("PostgreSQL");
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.next()).thenReturn(true);
+		when(rs.getString(1)).thenReturn("on");
+		when(statement.executeQuery("SHOW synchronous_commit")).thenReturn(rs);
+
+		new BulkModeSqlCommandsRunner().execute(connection,
+				Arrays.asList(SqlCommand.from("INSERT INTO T VALUES (1)")));
+
+		InOrder order = inOrder(connection, statement);
+		order.verify(statement).execute("SET synchronous_commit = off");
+		order.verify(connection).setAutoCommit(false);
+		order.verify(connection).commit();
+		order.verify(connection).setAutoCommit(true);
+		order.verify(statement).execute("SET synchronous_commit = on");
+		verify(connection, never()).rollback();
+	}
+
+	private void mockConnection(String databaseProductName) throws SQLException {
+		connection = mock(Connection.class);
+		statement = mock(Statement.class);
+		DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+		when(metaData.getDatabaseProductName()).thenReturn(databaseProductName);
+		when(connection.getMetaData()).thenReturn(metaData);
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.executeBatch()).thenReturn(new int[] { 1 });
+	}
+
+	private static class FailingCommand extends SqlCommand {
+
+		FailingCommand() {
+			super("INSERT INTO T VALUES (1)", null);
+		}
+
+		@Override
+		public boolean canHandleInJdbcTemplate() {
+			return true;
+		}
+
+		@Override
+		public void handle(JdbcTemplate jdbcTemplate, Connection connection) {
+			throw new IllegalStateException("failed");
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.dataflow.common.flyway.CheckpointJournal.Checkpoint;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class CheckpointJournalTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private CheckpointJournal journal;
+	private SqlCommandsRunner runner;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		journal = new CheckpointJournal();
+		runner = new SqlCommandsRunner();
+		runner.setCheckpointJournal(journal);
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void retriedExecutionSkipsCompletedCommands() throws SQLException {
+		List<SqlCommand> commands = Arrays.asList(
+				SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)"),
+				SqlCommand.from("INSERT INTO T (ID) VALUES (1)"),
+				SqlCommand.from("INSERT INTO MISSING (ID) VALUES (1)"),
+				SqlCommand.from("INSERT INTO T (ID) VALUES (2)"));
+		try (Connection connection = database.getConnection()) {
+			assertThatThrownBy(() -> runner.execute("test", connection, commands))
+					.isInstanceOf(DataAccessException.class);
+		}
+		assertThat(journal.find(jdbcTemplate, "test").getCommandIndex()).isEqualTo(2);
+
+		jdbcTemplate.execute("CREATE TABLE MISSING (ID INT PRIMARY KEY)");
+		try (Connection connection = database.getConnection()) {
+			runner.execute("test", connection, commands);
+		}
+		assertThat(jdbcTemplate.queryForList("SELECT ID FROM T ORDER BY ID", Integer.class)).containsExactly(1, 2);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM MISSING", Integer.class)).isEqualTo(1);
+		assertThat(journal.find(jdbcTemplate, "test")).isNull();
+	}
+
+	@Test
+	public void retriedExecutionResumesChunkedCommand() throws SQLException {
+		jdbcTemplate.execute("CREATE TABLE T (ID BIGINT PRIMARY KEY, FLAG INT DEFAULT 0 NOT NULL)");
+		for (long id = 1; id <= 300; id++) {
+			jdbcTemplate.update("INSERT INTO T (ID) VALUES (?)", id);
+		}
+		List<SqlCommand> commands = Arrays.asList(new ChunkedUpdateSqlCommand("T", "ID", "FLAG = 1", null, 100));
+		try (Connection connection = database.getConnection()) {
+			journal.initialize(jdbcTemplate, new DatabaseMetaDataSnapshot(connection));
+		}
+		journal.save(jdbcTemplate, "test", new Checkpoint(0, 201L));
+
+		try (Connection connection = database.getConnection()) {
+			runner.execute("test", connection, commands);
+		}
+		assertThat(jdbcTemplate.queryForObject("SELECT MIN(ID) FROM T WHERE FLAG = 1", Long.class)).isEqualTo(201L);
+		assertThat(journal.find(jdbcTemplate, "test")).isNull();
+	}
+
+	@Test
+	public void executionWithoutIdIsNotJournaled() throws SQLException {
+		try (Connection connection = database.getConnection()) {
+			runner.execute(connection, Arrays.asList(SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)")));
+		}
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?",
+				Integer.class, CheckpointJournal.DEFAULT_TABLE_NAME)).isEqualTo(0);
+	}
+}
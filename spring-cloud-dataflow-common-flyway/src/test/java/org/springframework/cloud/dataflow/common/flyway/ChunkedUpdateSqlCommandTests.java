@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class ChunkedUpdateSqlCommandTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE T (ID BIGINT PRIMARY KEY, FLAG INT DEFAULT 0 NOT NULL)");
+		List<Object[]> rows = new ArrayList<>();
+		for (long id = 1; id <= 250; id++) {
+			rows.add(new Object[] { id });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO T (ID) VALUES (?)", rows);
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void updatesMatchingRowsInChunks() throws SQLException {
+		ChunkedUpdateSqlCommand command = new ChunkedUpdateSqlCommand("T", "ID", "FLAG = 1", "ID > 10", 100);
+		List<Long> chunks = new ArrayList<>();
+		try (Connection connection = database.getConnection()) {
+			command.handle(jdbcTemplate, connection, null, chunks::add);
+		}
+		assertThat(chunks).containsExactly(111L, 211L, 311L);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T WHERE FLAG = 1", Integer.class))
+				.isEqualTo(240);
+		assertThat(jdbcTemplate.queryForObject("SELECT MAX(ID) FROM T WHERE FLAG = 0", Long.class)).isEqualTo(10L);
+	}
+
+	@Test
+	public void resumesFromGivenKey() throws SQLException {
+		ChunkedUpdateSqlCommand command = new ChunkedUpdateSqlCommand("T", "ID", "FLAG = 1", null, 100);
+		try (Connection connection = database.getConnection()) {
+			command.handle(jdbcTemplate, connection, 201L, null);
+		}
+		assertThat(jdbcTemplate.queryForObject("SELECT MIN(ID) FROM T WHERE FLAG = 1", Long.class)).isEqualTo(201L);
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T WHERE FLAG = 1", Integer.class))
+				.isEqualTo(50);
+	}
+
+	@Test
+	public void emptyRangeDoesNothing() throws SQLException {
+		ChunkedUpdateSqlCommand command = new ChunkedUpdateSqlCommand("T", "ID", "FLAG = 1", "ID > 1000", 100);
+		try (Connection connection = database.getConnection()) {
+			command.handle(jdbcTemplate, connection);
+		}
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T WHERE FLAG = 1", Integer.class))
+				.isEqualTo(0);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+public class CreateIndexOnlineSqlCommandTests {
+
+	private final CreateIndexOnlineSqlCommand command = new CreateIndexOnlineSqlCommand("T", "T_IDX", "A, B");
+
+	@Test
+	public void postgresBuildsConcurrently() {
+		assertThat(command.getOnlineCommand(SqlDialect.POSTGRESQL))
+				.isEqualTo("CREATE INDEX CONCURRENTLY T_IDX ON T (A, B)");
+	}
+
+	@Test
+	public void mysqlAndMariadbBuildInPlace() {
+		assertThat(command.getOnlineCommand(SqlDialect.MYSQL))
+				.isEqualTo("CREATE INDEX T_IDX ON T (A, B) ALGORITHM=INPLACE LOCK=NONE");
+		assertThat(command.getOnlineCommand(SqlDialect.MARIADB))
+				.isEqualTo("CREATE INDEX T_IDX ON T (A, B) ALGORITHM=INPLACE LOCK=NONE");
+	}
+
+	@Test
+	public void sqlServerBuildsOnline() {
+		assertThat(command.getOnlineCommand(SqlDialect.SQLSERVER))
+				.isEqualTo("CREATE INDEX T_IDX ON T (A, B) WITH (ONLINE = ON)");
+	}
+
+	@Test
+	public void oracleBuildsOnline() {
+		assertThat(command.getOnlineCommand(SqlDialect.ORACLE)).isEqualTo("CREATE INDEX T_IDX ON T (A, B) ONLINE");
+	}
+
+	@Test
+	public void otherDialectsFallBackToPlainIndex() {
+		assertThat(command.getOnlineCommand(SqlDialect.H2)).isEqualTo("CREATE INDEX T_IDX ON T (A, B)");
+		assertThat(command.getOnlineCommand(SqlDialect.UNKNOWN)).isEqualTo("CREATE INDEX T_IDX ON T (A, B)");
+	}
+
+	@Test
+	public void postgresInvalidIndexIsNotPresent() throws SQLException {
+		Connection connection = mockPostgres(false);
+		DatabaseMetaDataSnapshot snapshot = mock(DatabaseMetaDataSnapshot.class);
+		when(snapshot.hasIndex("T", "T_IDX")).thenReturn(true);
+		when(snapshot.getConnection()).thenReturn(connection);
+		assertThat(command.isPresent(snapshot)).isFalse();
+	}
+
+	@Test
+	public void postgresValidIndexIsPresent() throws SQLException {
+		Connection connection = mockPostgres(true);
+		DatabaseMetaDataSnapshot snapshot = mock(DatabaseMetaDataSnapshot.class);
+		when(snapshot.hasIndex("T", "T_IDX")).thenReturn(true);
+		when(snapshot.getConnection()).thenReturn(connection);
+		assertThat(command.isPresent(snapshot)).isTrue();
+	}
+
+	@Test
+	public void postgresInvalidIndexIsDroppedBeforeRebuild() throws SQLException {
+		Connection connection = mockPostgres(false);
+		when(connection.getAutoCommit()).thenReturn(true);
+		Statement statement = mock(Statement.class);
+		when(connection.createStatement()).thenReturn(statement);
+		command.handle(new JdbcTemplate(new SingleConnectionDataSource(connection, true)), connection);
+		InOrder order = inOrder(statement);
+		order.verify(statement).execute("DROP INDEX CONCURRENTLY T_IDX");
+		order.verify(statement).execute("CREATE INDEX CONCURRENTLY T_IDX ON T (A, B)");
+	}
+
+	private static Connection mockPostgres(boolean valid) throws SQLException {
+		Connection connection = mock(Connection.class);
+		DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+		when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+		when(connection.getMetaData()).thenReturn(metaData);
+		PreparedStatement ps = mock(PreparedStatement.class);
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.next()).thenReturn(true);
+		when(rs.getBoolean(1)).thenReturn(valid);
+		when(ps.executeQuery()).thenReturn(rs);
+		when(connection.prepareStatement(anyString())).thenReturn(ps);
+		return connection;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class DatabaseMetaDataSnapshotTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+	}
+
+	@AfterEach
+	public void cleanup() {
+		database.shutdown();
+	}
+
+	@Test
+	public void invalidatedTableIsReadAgain() throws SQLException {
+		jdbcTemplate.execute("CREATE TABLE T1 (ID INT)");
+		try (Connection connection = database.getConnection()) {
+			DatabaseMetaDataSnapshot snapshot = new DatabaseMetaDataSnapshot(connection);
+			assertThat(snapshot.hasTable("t1")).isTrue();
+			assertThat(snapshot.hasTable("T2")).isFalse();
+			assertThat(snapshot.hasColumn("T1", "NAME")).isFalse();
+
+			jdbcTemplate.execute("CREATE TABLE T2 (ID INT)");
+			jdbcTemplate.execute("ALTER TABLE T1 ADD COLUMN NAME VARCHAR(10)");
+			assertThat(snapshot.hasTable("T2")).isFalse();
+
+			snapshot.invalidate("T2");
+			snapshot.invalidate("T1");
+			assertThat(snapshot.hasTable("T2")).isTrue();
+			assertThat(snapshot.hasColumn("T1", "NAME")).isTrue();
+		}
+	}
+
+	@Test
+	public void conditionalCommandsInMixedList() throws SQLException {
+		try (Connection connection = database.getConnection()) {
+			new SqlCommandsRunner().execute(connection, Arrays.asList(
+					new CreateTableIfAbsentSqlCommand("T1", "CREATE TABLE T1 (ID INT)"),
+					SqlCommand.from("INSERT INTO T1 (ID) VALUES (1)"),
+					new CreateTableIfAbsentSqlCommand("T1", "CREATE TABLE T1 (ID INT)"),
+					new AddColumnIfAbsentSqlCommand("T1", "NAME", "ALTER TABLE T1 ADD COLUMN NAME VARCHAR(10)"),
+					new AddColumnIfAbsentSqlCommand("T1", "NAME", "ALTER TABLE T1 ADD COLUMN NAME VARCHAR(10)"),
+					new CreateIndexIfAbsentSqlCommand("T1", "IDX_T1", "CREATE INDEX IDX_T1 ON T1 (NAME)"),
+					new CreateIndexIfAbsentSqlCommand("T1", "IDX_T1", "CREATE INDEX IDX_T1 ON T1 (NAME)")));
+		}
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T1", Integer.class)).isEqualTo(1);
+	}
+}
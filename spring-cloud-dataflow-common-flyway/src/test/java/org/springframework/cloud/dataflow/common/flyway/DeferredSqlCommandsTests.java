@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class DeferredSqlCommandsTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void deferredCommandsSurviveRestart() throws SQLException {
+		SqlCommandsRunner runner = new SqlCommandsRunner();
+		runner.setDeferredCommands(new DeferredSqlCommands());
+		try (Connection connection = database.getConnection()) {
+			runner.execute(connection, Arrays.asList(
+					SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY, A INT)"),
+					new CreateIndexOnlineSqlCommand("T", "IX_T_A", "A"),
+					new RefreshStatisticsSqlCommand("T")));
+			assertThat(new DatabaseMetaDataSnapshot(connection).hasIndex("T", "IX_T_A")).isFalse();
+		}
+		assertThat(countDeferred()).isEqualTo(2);
+
+		// new instance as after an application restart
+		try (Connection connection = database.getConnection()) {
+			assertThat(new DeferredSqlCommands().execute(new SqlCommandsRunner(), connection)).isEqualTo(2);
+			assertThat(new DatabaseMetaDataSnapshot(connection).hasIndex("T", "IX_T_A")).isTrue();
+		}
+		assertThat(countDeferred()).isEqualTo(0);
+	}
+
+	@Test
+	public void replayedCommandsAreNotDeferredAgain() throws SQLException {
+		DeferredSqlCommands deferredCommands = new DeferredSqlCommands();
+		SqlCommandsRunner runner = new SqlCommandsRunner();
+		runner.setDeferredCommands(deferredCommands);
+		try (Connection connection = database.getConnection()) {
+			runner.execute(connection, Arrays.asList(
+					SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY, A INT)"),
+					new CreateIndexOnlineSqlCommand("T", "IX_T_A", "A")));
+		}
+		assertThat(countDeferred()).isEqualTo(1);
+
+		BackgroundMigrationRunner background = new BackgroundMigrationRunner(Runnable::run, database,
+				deferredCommands, runner);
+		background.start(() -> {
+		});
+		assertThat(background.getCompleted()).isCompleted();
+		assertThat(countDeferred()).isEqualTo(0);
+		try (Connection connection = database.getConnection()) {
+			assertThat(new DatabaseMetaDataSnapshot(connection).hasIndex("T", "IX_T_A")).isTrue();
+		}
+	}
+
+	@Test
+	public void nothingToExecuteWithoutTable() throws SQLException {
+		try (Connection connection = database.getConnection()) {
+			assertThat(new DeferredSqlCommands().execute(new SqlCommandsRunner(), connection)).isEqualTo(0);
+		}
+	}
+
+	private int countDeferred() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + DeferredSqlCommands.DEFAULT_TABLE_NAME,
+				Integer.class);
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class DialectSqlCommandsTests {
+
+	private static final List<SqlCommand> DEFAULT = Arrays.asList(SqlCommand.from("CREATE TABLE D (ID INT)"));
+	private static final List<SqlCommand> H2 = Arrays.asList(SqlCommand.from("CREATE TABLE H (ID INT)"));
+	private static final List<SqlCommand> POSTGRES = Arrays.asList(new CreateIndexOnlineSqlCommand("T", "I", "A"));
+
+	@Test
+	public void dialectCommandsAreSelected() {
+		DialectSqlCommands commands = new DialectSqlCommands(DEFAULT).add(SqlDialect.H2, H2)
+				.add(SqlDialect.POSTGRESQL, POSTGRES);
+		assertThat(commands.getCommands(SqlDialect.H2)).isSameAs(H2);
+		assertThat(commands.getCommands(SqlDialect.POSTGRESQL)).isSameAs(POSTGRES);
+		assertThat(commands.getCommands(SqlDialect.ORACLE)).isSameAs(DEFAULT);
+	}
+
+	@Test
+	public void noDefaultCommandsGivesEmptyList() {
+		assertThat(new DialectSqlCommands().add(SqlDialect.H2, H2).getCommands(SqlDialect.MYSQL)).isEmpty();
+	}
+
+	@Test
+	public void transactionalOnlyIfAllDialectsAre() {
+		assertThat(new DialectSqlCommands(DEFAULT).add(SqlDialect.H2, H2).canExecuteInTransaction()).isTrue();
+		assertThat(new DialectSqlCommands(DEFAULT).add(SqlDialect.POSTGRESQL, POSTGRES).canExecuteInTransaction())
+				.isFalse();
+		assertThat(new DialectSqlCommands(POSTGRES).canExecuteInTransaction()).isFalse();
+	}
+
+	@Test
+	public void productNamesAreResolvedIndependentOfLocale() {
+		Locale locale = Locale.getDefault();
+		try {
+			// lower casing "I" gives a dotless i, breaking matching of i.e. "MARIADB"
+			Locale.setDefault(new Locale("tr", "TR"));
+			assertThat(SqlDialect.fromProductName("PostgreSQL")).isEqualTo(SqlDialect.POSTGRESQL);
+			assertThat(SqlDialect.fromProductName("Oracle")).isEqualTo(SqlDialect.ORACLE);
+			assertThat(SqlDialect.fromProductName("Microsoft SQL Server")).isEqualTo(SqlDialect.SQLSERVER);
+			assertThat(SqlDialect.fromProductName("MySQL")).isEqualTo(SqlDialect.MYSQL);
+			assertThat(SqlDialect.fromProductName("MARIADB")).isEqualTo(SqlDialect.MARIADB);
+			assertThat(SqlDialect.fromProductName("DB2/LINUXX8664")).isEqualTo(SqlDialect.DB2);
+			assertThat(SqlDialect.fromProductName("H2")).isEqualTo(SqlDialect.H2);
+			assertThat(SqlDialect.fromProductName("HSQL Database Engine")).isEqualTo(SqlDialect.HSQLDB);
+			assertThat(SqlDialect.fromProductName("SQLITE")).isEqualTo(SqlDialect.UNKNOWN);
+			assertThat(SqlDialect.fromProductName(null)).isEqualTo(SqlDialect.UNKNOWN);
+		}
+		finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void migrationExecutesCommandsOfItsDialect() throws Exception {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true).build();
+		try (Connection connection = database.getConnection()) {
+			new V1__Dialect().migrate(FlywayContexts.migrationContext(Flyway.configure().dataSource(database),
+					connection));
+			List<String> tables = new JdbcTemplate(database).queryForList(
+					"SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME IN ('D', 'H')", String.class);
+			assertThat(tables).containsExactly("H");
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+	private static class V1__Dialect extends AbstractMigration {
+
+		V1__Dialect() {
+			super(new SqlCommandsRunner(), new DialectSqlCommands(DEFAULT).add(SqlDialect.H2, H2)
+					.add(SqlDialect.POSTGRESQL, Collections.emptyList()));
+		}
+	}
+}
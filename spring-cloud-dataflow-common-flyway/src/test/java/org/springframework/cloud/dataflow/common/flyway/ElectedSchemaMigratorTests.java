@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class ElectedSchemaMigratorTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private FluentConfiguration configuration;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		configuration = Flyway.configure().dataSource(database).javaMigrations(new V1__Create());
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void followerSkipsReachedVersion() {
+		assertThat(new ElectedSchemaMigrator(configuration).migrate()).isTrue();
+		assertThat(new ElectedSchemaMigrator(configuration).migrate()).isFalse();
+	}
+
+	@Test
+	public void expiredLeaseIsTakenOver() {
+		new ElectedSchemaMigrator(configuration).migrate();
+		jdbcTemplate.update("UPDATE " + ElectedSchemaMigrator.DEFAULT_TABLE_NAME + " SET SCHEMA_VERSION = NULL, "
+				+ "OWNER = 'stopped', HEARTBEAT = DATEADD('MINUTE', -10, CURRENT_TIMESTAMP), LEASE_VERSION = 5");
+		ElectedSchemaMigrator migrator = new ElectedSchemaMigrator(configuration);
+		migrator.setOwner("next");
+		assertThat(migrator.migrate()).isTrue();
+		assertThat(jdbcTemplate.queryForObject("SELECT SCHEMA_VERSION FROM "
+				+ ElectedSchemaMigrator.DEFAULT_TABLE_NAME, String.class)).isEqualTo("1");
+	}
+
+	@Test
+	public void liveLeaseIsNotTakenOver() {
+		new ElectedSchemaMigrator(configuration).migrate();
+		jdbcTemplate.update("UPDATE " + ElectedSchemaMigrator.DEFAULT_TABLE_NAME + " SET SCHEMA_VERSION = NULL, "
+				+ "OWNER = 'running', HEARTBEAT = CURRENT_TIMESTAMP");
+		ElectedSchemaMigrator migrator = new ElectedSchemaMigrator(configuration);
+		migrator.setBackoff(Duration.ofMillis(10), Duration.ofMillis(50));
+		migrator.setTimeout(Duration.ofMillis(300));
+		assertThatThrownBy(migrator::migrate).isInstanceOf(DataFlowSchemaMigrationException.class);
+		assertThat(jdbcTemplate.queryForObject("SELECT OWNER FROM " + ElectedSchemaMigrator.DEFAULT_TABLE_NAME,
+				String.class)).isEqualTo("running");
+	}
+
+	@Test
+	public void leaderAbortsWhenLeaseIsTakenOver() {
+		configuration.javaMigrations(new V1__TakeOver(), new V2__Create());
+		ElectedSchemaMigrator migrator = new ElectedSchemaMigrator(configuration);
+		assertThatThrownBy(migrator::migrate).hasStackTraceContaining("Lost migration leader lease");
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'U'",
+				Integer.class)).isEqualTo(0);
+		assertThat(jdbcTemplate.queryForObject("SELECT OWNER FROM " + ElectedSchemaMigrator.DEFAULT_TABLE_NAME,
+				String.class)).isEqualTo("other");
+		assertThat(jdbcTemplate.queryForObject("SELECT SCHEMA_VERSION FROM "
+				+ ElectedSchemaMigrator.DEFAULT_TABLE_NAME, String.class)).isNull();
+	}
+
+	@Test
+	public void expectedVersionIncludesSqlMigrations() {
+		configuration.locations("classpath:db/indexed-sql");
+		assertThat(new ElectedSchemaMigrator(configuration).migrate()).isTrue();
+		assertThat(jdbcTemplate.queryForObject("SELECT SCHEMA_VERSION FROM "
+				+ ElectedSchemaMigrator.DEFAULT_TABLE_NAME, String.class)).isEqualTo("2");
+		assertThat(new ElectedSchemaMigrator(configuration).migrate()).isFalse();
+	}
+
+	private static class V1__Create extends AbstractMigration {
+
+		V1__Create() {
+			super(Arrays.asList(SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)")));
+		}
+	}
+
+	private static class V1__TakeOver extends AbstractMigration {
+
+		V1__TakeOver() {
+			super(Arrays.asList(SqlCommand.from("UPDATE " + ElectedSchemaMigrator.DEFAULT_TABLE_NAME
+					+ " SET OWNER = 'other'")));
+		}
+	}
+
+	private static class V2__Create extends AbstractMigration {
+
+		V2__Create() {
+			super(Arrays.asList(SqlCommand.from("CREATE TABLE U (ID INT PRIMARY KEY)")));
+		}
+	}
+}
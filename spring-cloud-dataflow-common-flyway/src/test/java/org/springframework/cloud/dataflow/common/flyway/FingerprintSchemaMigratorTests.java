@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class FingerprintSchemaMigratorTests {
+
+	private EmbeddedDatabase database;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void unchangedFingerprintSkipsFlyway() {
+		FluentConfiguration configuration = Flyway.configure().dataSource(database).javaMigrations(new V1__Create());
+		assertThat(new FingerprintSchemaMigrator(configuration).migrate()).isTrue();
+		assertThat(new FingerprintSchemaMigrator(configuration).migrate()).isFalse();
+	}
+
+	@Test
+	public void fingerprintUsesOverriddenCallbackCommands() {
+		String first = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.callbacks(new OverridingCallback("CREATE TABLE A (ID INT)"))).getFingerprint();
+		String second = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.callbacks(new OverridingCallback("CREATE TABLE B (ID INT)"))).getFingerprint();
+		assertThat(first).isNotEqualTo(second);
+	}
+
+	@Test
+	public void fingerprintCoversMigrationCommands() {
+		String first = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.javaMigrations(new V2__Commands("CREATE TABLE A (ID INT)"))).getFingerprint();
+		String second = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.javaMigrations(new V2__Commands("CREATE TABLE B (ID INT)"))).getFingerprint();
+		assertThat(first).isNotEqualTo(second);
+	}
+
+	@Test
+	public void fingerprintCoversScriptContent() {
+		String first = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.javaMigrations(new V3__Script("CREATE TABLE A (ID INT);"))).getFingerprint();
+		String second = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.javaMigrations(new V3__Script("CREATE TABLE B (ID INT);"))).getFingerprint();
+		String same = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.javaMigrations(new V3__Script("CREATE TABLE A (ID INT);"))).getFingerprint();
+		assertThat(first).isNotEqualTo(second).isEqualTo(same);
+	}
+
+	@Test
+	public void fingerprintIgnoresTablesTrackedForStatistics() {
+		RefreshStatisticsCallback callback = new RefreshStatisticsCallback();
+		FingerprintSchemaMigrator migrator = new FingerprintSchemaMigrator(Flyway.configure().dataSource(database)
+				.callbacks(callback));
+		String first = migrator.getFingerprint();
+		callback.addTable("T");
+		assertThat(migrator.getFingerprint()).isEqualTo(first);
+	}
+
+	private static class V1__Create extends AbstractMigration {
+
+		V1__Create() {
+			super(Arrays.asList(SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)")));
+		}
+	}
+
+	private static class OverridingCallback extends AbstractCallback {
+
+		private final String command;
+
+		OverridingCallback(String command) {
+			super(Event.AFTER_MIGRATE);
+			this.command = command;
+		}
+
+		@Override
+		public List<SqlCommand> getCommands(Event event, Context context) {
+			assertThat(context.getConnection()).isNotNull();
+			return Arrays.asList(SqlCommand.from(command));
+		}
+	}
+
+	private static class V2__Commands extends AbstractMigration {
+
+		V2__Commands(String command) {
+			super(Arrays.asList(SqlCommand.from(command)));
+		}
+	}
+
+	private static class V3__Script extends AbstractScriptMigration {
+
+		V3__Script(String script) {
+			super(new ByteArrayResource(script.getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+}
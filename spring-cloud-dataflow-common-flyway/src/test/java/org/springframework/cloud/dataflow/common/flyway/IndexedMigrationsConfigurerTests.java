@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IndexedMigrationsConfigurerTests {
+
+	@Test
+	public void indexesAreUsedWithoutSqlMigrations() {
+		FluentConfiguration configuration = Flyway.configure().locations("classpath:db/indexed-none");
+		assertThat(IndexedMigrationsConfigurer.configure(configuration)).isTrue();
+		assertThat(configuration.getJavaMigrations()).hasSize(1);
+		assertThat(configuration.getJavaMigrations()[0]).isInstanceOf(V1__Indexed.class);
+		assertThat(configuration.isSkipDefaultResolvers()).isTrue();
+		assertThat(configuration.isSkipDefaultCallbacks()).isTrue();
+		assertThat(configuration.getLocations()).isEmpty();
+	}
+
+	@Test
+	public void indexesAreUsedWithSqlResourcesNotRecordedInIndex() {
+		// resources are no longer scanned at runtime, only an index tells about sql migrations
+		FluentConfiguration configuration = Flyway.configure().locations("classpath:db/indexed-sql");
+		assertThat(IndexedMigrationsConfigurer.configure(configuration)).isTrue();
+		assertThat(configuration.getJavaMigrations()).hasSize(1);
+		assertThat(configuration.getLocations()).isEmpty();
+	}
+
+	@Test
+	public void scanningIsKeptWhenIndexRecordsSqlMigrations(@TempDir Path directory) throws IOException {
+		Path index = directory.resolve(IndexedMigrationsConfigurer.INDEX_LOCATION);
+		Files.createDirectories(index.getParent());
+		Files.write(index, Arrays.asList(IndexedMigrationsConfigurer.SQL_MIGRATIONS_ENTRY,
+				V1__Indexed.class.getName()), StandardCharsets.UTF_8);
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { directory.toUri().toURL() },
+				getClass().getClassLoader())) {
+			FluentConfiguration configuration = Flyway.configure(classLoader).locations("classpath:db/indexed-sql");
+			assertThat(IndexedMigrationsConfigurer.configure(configuration)).isFalse();
+			assertThat(configuration.getJavaMigrations()).isEmpty();
+			assertThat(configuration.isSkipDefaultResolvers()).isFalse();
+			assertThat(configuration.getLocations()).hasSize(1);
+		}
+	}
+
+	@Test
+	public void scanningIsKeptWithFilesystemLocations(@TempDir Path directory) {
+		FluentConfiguration configuration = Flyway.configure().locations("filesystem:" + directory);
+		assertThat(IndexedMigrationsConfigurer.configure(configuration)).isFalse();
+		assertThat(configuration.getJavaMigrations()).isEmpty();
+		assertThat(configuration.getLocations()).hasSize(1);
+	}
+
+	public static class V1__Indexed extends AbstractMigration {
+
+		public V1__Indexed() {
+			super(Arrays.asList(SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)")));
+		}
+	}
+}
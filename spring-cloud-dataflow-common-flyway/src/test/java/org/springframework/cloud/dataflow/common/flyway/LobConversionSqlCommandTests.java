@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.dataflow.common.flyway.LobConversionSqlCommand.Mode;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class LobConversionSqlCommandTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE T (ID BIGINT PRIMARY KEY, SRC CLOB, DST CLOB, BSRC BLOB, BDST BLOB, "
+				+ "TDST VARCHAR(100))");
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void rowsBelowBatchSizeAreUpdatedInOneBatch() throws SQLException {
+		insertCharacters(3, "value");
+		StatementCounter counter = convert(characterCommand(5));
+		assertThat(counter.batches).isEqualTo(1);
+		assertThat(counter.updates).isEqualTo(0);
+		assertCharactersCopied(3);
+	}
+
+	@Test
+	public void rowsEqualToBatchSizeAreUpdatedInOneBatch() throws SQLException {
+		insertCharacters(5, "value");
+		StatementCounter counter = convert(characterCommand(5));
+		assertThat(counter.batches).isEqualTo(1);
+		assertCharactersCopied(5);
+	}
+
+	@Test
+	public void rowsAboveBatchSizeAreUpdatedInSeveralBatches() throws SQLException {
+		insertCharacters(11, "value");
+		StatementCounter counter = convert(characterCommand(5));
+		assertThat(counter.batches).isEqualTo(3);
+		assertCharactersCopied(11);
+	}
+
+	@Test
+	public void bufferBudgetExecutesBatch() throws SQLException {
+		insertCharacters(5, "0123456789");
+		LobConversionSqlCommand command = characterCommand(100);
+		command.setBufferBudget(15);
+		StatementCounter counter = convert(command);
+		assertThat(counter.batches).isEqualTo(3);
+		assertCharactersCopied(5);
+	}
+
+	@Test
+	public void largeValuesAreStreamedIntoOwnUpdates() throws SQLException {
+		insertCharacters(2, "small");
+		jdbcTemplate.update("INSERT INTO T (ID, SRC) VALUES (3, ?)", "a value larger than max in-memory size");
+		LobConversionSqlCommand command = characterCommand(100);
+		command.setMaxInMemorySize(8);
+		StatementCounter counter = convert(command);
+		assertThat(counter.batches).isEqualTo(1);
+		assertThat(counter.updates).isEqualTo(1);
+		assertCharactersCopied(3);
+	}
+
+	@Test
+	public void nullValuesAreCopied() throws SQLException {
+		jdbcTemplate.update("INSERT INTO T (ID, DST) VALUES (1, 'stale')");
+		convert(characterCommand(100));
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T WHERE DST IS NULL", Integer.class))
+				.isEqualTo(1);
+	}
+
+	@Test
+	public void binaryValuesAreCopied() throws SQLException {
+		byte[] small = { 1, 2, 3 };
+		byte[] large = new byte[100];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) i;
+		}
+		jdbcTemplate.update("INSERT INTO T (ID, BSRC) VALUES (1, ?)", small);
+		jdbcTemplate.update("INSERT INTO T (ID, BSRC) VALUES (2, ?)", large);
+		LobConversionSqlCommand command = new LobConversionSqlCommand("T", "ID", "BSRC", "BDST", Mode.BINARY, 100);
+		command.setMaxInMemorySize(10);
+		StatementCounter counter = convert(command);
+		assertThat(counter.batches).isEqualTo(1);
+		assertThat(counter.updates).isEqualTo(1);
+		assertThat(jdbcTemplate.queryForObject("SELECT BDST FROM T WHERE ID = 1", byte[].class)).isEqualTo(small);
+		assertThat(jdbcTemplate.queryForObject("SELECT BDST FROM T WHERE ID = 2", byte[].class)).isEqualTo(large);
+	}
+
+	@Test
+	public void binaryValuesAreDecodedIntoCharacters() throws SQLException {
+		byte[] value = "h\u00e4l\u00f6".getBytes(StandardCharsets.UTF_8);
+		jdbcTemplate.update("INSERT INTO T (ID, BSRC) VALUES (1, ?)", value);
+		convert(new LobConversionSqlCommand("T", "ID", "BSRC", "TDST", Mode.BINARY_TO_CHARACTER, 100));
+		assertThat(jdbcTemplate.queryForObject("SELECT TDST FROM T WHERE ID = 1", String.class))
+				.isEqualTo("h\u00e4l\u00f6");
+	}
+
+	private LobConversionSqlCommand characterCommand(int batchSize) {
+		LobConversionSqlCommand command = new LobConversionSqlCommand("T", "ID", "SRC", "DST", Mode.CHARACTER, 100);
+		command.setBatchSize(batchSize);
+		return command;
+	}
+
+	private StatementCounter convert(LobConversionSqlCommand command) throws SQLException {
+		StatementCounter counter = new StatementCounter();
+		try (Connection connection = database.getConnection()) {
+			Connection counted = counter.wrap(connection);
+			command.handle(new JdbcTemplate(new SingleConnectionDataSource(counted, true)), counted);
+		}
+		return counter;
+	}
+
+	private void insertCharacters(int count, String value) {
+		List<Object[]> rows = new ArrayList<>();
+		for (long id = 1; id <= count; id++) {
+			rows.add(new Object[] { id, value + id });
+		}
+		jdbcTemplate.batchUpdate("INSERT INTO T (ID, SRC) VALUES (?, ?)", rows);
+	}
+
+	private void assertCharactersCopied(int count) {
+		assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM T WHERE CAST(SRC AS VARCHAR) = "
+				+ "CAST(DST AS VARCHAR)", Integer.class)).isEqualTo(count);
+	}
+
+	/**
+	 * Counts batches and single updates executed through a connection.
+	 */
+	private static class StatementCounter {
+
+		private int batches;
+		private int updates;
+
+		Connection wrap(Connection connection) {
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+						Object result = invoke(connection, method, args);
+						if (result instanceof PreparedStatement && ((String) args[0]).startsWith("UPDATE")) {
+							return count((PreparedStatement) result);
+						}
+						return result;
+					});
+		}
+
+		private PreparedStatement count(PreparedStatement statement) {
+			return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+						if (method.getName().equals("executeBatch")) {
+							batches++;
+						}
+						else if (method.getName().equals("executeUpdate")) {
+							updates++;
+						}
+						return invoke(statement, method, args);
+					});
+		}
+
+		private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			}
+			catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
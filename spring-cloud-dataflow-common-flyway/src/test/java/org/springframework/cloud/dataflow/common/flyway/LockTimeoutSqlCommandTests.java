@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+public class LockTimeoutSqlCommandTests {
+
+	private static final int SUPPRESSED_ERROR_CODE = 7;
+	private Connection connection;
+	private Statement statement;
+
+	@BeforeEach
+	public void setup() throws SQLException {
+		connection = mock(Connection.class);
+		statement = mock(Statement.class);
+		DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+		when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+		when(metaData.supportsSavepoints()).thenReturn(true);
+		when(connection.getMetaData()).thenReturn(metaData);
+		when(connection.createStatement()).thenReturn(statement);
+		ResultSet rs = mock(ResultSet.class);
+		when(rs.next()).thenReturn(true);
+		when(rs.getString(1)).thenReturn("5s");
+		when(statement.executeQuery("SHOW lock_timeout")).thenReturn(rs);
+	}
+
+	@Test
+	public void postgresLocalLockTimeoutIsRestoredWithinTransaction() throws SQLException {
+		when(connection.getAutoCommit()).thenReturn(false);
+		when(connection.setSavepoint()).thenReturn(mock(Savepoint.class));
+		new LockTimeoutSqlCommand("ALTER TABLE T ADD COLUMN A INT", Duration.ofMillis(500)).handle(null, connection);
+		InOrder order = inOrder(statement);
+		order.verify(statement).execute("SET LOCAL lock_timeout = '500ms'");
+		order.verify(statement).execute("ALTER TABLE T ADD COLUMN A INT");
+		order.verify(statement).execute("SET LOCAL lock_timeout = '5s'");
+	}
+
+	@Test
+	public void postgresSessionLockTimeoutIsRestoredInAutoCommit() throws SQLException {
+		when(connection.getAutoCommit()).thenReturn(true);
+		new LockTimeoutSqlCommand("ALTER TABLE T ADD COLUMN A INT", Duration.ofMillis(500)).handle(null, connection);
+		InOrder order = inOrder(statement);
+		order.verify(statement).execute("SET lock_timeout = '500ms'");
+		order.verify(statement).execute("ALTER TABLE T ADD COLUMN A INT");
+		order.verify(statement).execute("SET lock_timeout = '5s'");
+	}
+
+	@Test
+	public void suppressedErrorIsNotThrown() throws SQLException {
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(statement.execute("ALTER TABLE T ADD COLUMN A INT"))
+				.thenThrow(new SQLException("column exists", "42701", SUPPRESSED_ERROR_CODE));
+		new LockTimeoutSqlCommand("ALTER TABLE T ADD COLUMN A INT", Arrays.asList(SUPPRESSED_ERROR_CODE), Duration.ofMillis(500), null)
+				.handle(null, connection);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class MicrometerSqlCommandListenerTests {
+
+	private SimpleMeterRegistry registry;
+	private MicrometerSqlCommandListener listener;
+
+	@BeforeEach
+	public void setup() {
+		registry = new SimpleMeterRegistry();
+		listener = new MicrometerSqlCommandListener(registry);
+	}
+
+	@Test
+	public void timerAndRowsAreTaggedWithExecutionId() {
+		listener.executed(new SqlCommandEvent("V1", SqlCommand.from("UPDATE T SET A = 1"), Duration.ofMillis(20), 5,
+				null));
+		listener.executed(new SqlCommandEvent("V1", SqlCommand.from("UPDATE T SET A = 2"), Duration.ofMillis(30), 7,
+				null));
+		Timer timer = registry.get(MicrometerSqlCommandListener.COMMAND_TIMER).tag("name", "V1")
+				.tag("suppressed", "false").timer();
+		assertThat(timer.count()).isEqualTo(2);
+		assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(50.0);
+		DistributionSummary rows = registry.get(MicrometerSqlCommandListener.COMMAND_ROWS).tag("name", "V1")
+				.summary();
+		assertThat(rows.count()).isEqualTo(2);
+		assertThat(rows.totalAmount()).isEqualTo(12.0);
+	}
+
+	@Test
+	public void suppressedErrorIsTagged() {
+		listener.executed(new SqlCommandEvent("V1", SqlCommand.from("CREATE INDEX I ON T (A)"), Duration.ofMillis(1),
+				-1, 1061));
+		assertThat(registry.get(MicrometerSqlCommandListener.COMMAND_TIMER).tag("suppressed", "true").timer().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	public void unknownExecutionAndUpdateCountAreHandled() {
+		listener.executed(new SqlCommandEvent(null, SqlCommand.from("CREATE TABLE T (A INT)"), Duration.ofMillis(1),
+				-1, null));
+		assertThat(registry.get(MicrometerSqlCommandListener.COMMAND_TIMER).tag("name", "unknown").timer().count())
+				.isEqualTo(1);
+		assertThat(registry.find(MicrometerSqlCommandListener.COMMAND_ROWS).summary()).isNull();
+	}
+
+	@Test
+	public void runnerPublishesExecutedCommands() throws SQLException {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true).build();
+		try (Connection connection = database.getConnection()) {
+			SqlCommandsRunner runner = new SqlCommandsRunner();
+			runner.addListener(listener);
+			runner.execute("V1", connection, Arrays.asList(
+					SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)"),
+					SqlCommand.from("INSERT INTO T (ID) VALUES (1), (2)"),
+					SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)", 42101)));
+		}
+		finally {
+			database.shutdown();
+		}
+		assertThat(registry.get(MicrometerSqlCommandListener.COMMAND_TIMER).tag("name", "V1")
+				.tag("suppressed", "false").timer().count()).isEqualTo(2);
+		assertThat(registry.get(MicrometerSqlCommandListener.COMMAND_TIMER).tag("name", "V1")
+				.tag("suppressed", "true").timer().count()).isEqualTo(1);
+		assertThat(registry.get(MicrometerSqlCommandListener.COMMAND_ROWS).tag("name", "V1").summary().max())
+				.isEqualTo(2.0);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.dataflow.common.flyway.MigrationRehearsal.CommandTiming;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class MigrationRehearsalTests {
+
+	private MigrationRehearsal rehearsal;
+
+	@BeforeEach
+	public void setup() {
+		rehearsal = MigrationRehearsal.embedded(EmbeddedDatabaseType.H2);
+	}
+
+	@AfterEach
+	public void clean() {
+		rehearsal.close();
+	}
+
+	@Test
+	public void onlySeededTablesAreExtrapolated() {
+		rehearsal.setScale(0.5);
+		rehearsal.rehearse("schema", Arrays.asList(SqlCommand.from("CREATE TABLE S (ID INT, V INT)"),
+				SqlCommand.from("CREATE TABLE O (ID INT, V INT)")));
+		rehearsal.seed("INSERT INTO S (ID, V) VALUES (?, ?)", 100, row -> new Object[] { row, 0 });
+		rehearsal.rehearse("change", Arrays.asList(SqlCommand.from("UPDATE S SET V = 1"),
+				SqlCommand.from("UPDATE O SET V = 1")));
+		List<CommandTiming> timings = rehearsal.getTimings();
+		CommandTiming seeded = timings.get(2);
+		CommandTiming other = timings.get(3);
+		assertThat(seeded.getUpdateCount()).isEqualTo(50);
+		assertThat(seeded.getForecast()).isEqualTo(Duration.ofNanos((long) (seeded.getDuration().toNanos() / 0.5)));
+		assertThat(other.getForecast()).isEqualTo(other.getDuration());
+	}
+
+	@Test
+	public void callbackCommandsAreResolvedLikeFlyway() {
+		rehearsal.rehearse(new OverridingCallback());
+		assertThat(rehearsal.getTimings()).extracting(CommandTiming::getCommand)
+				.containsExactly("CREATE TABLE C (ID INT)");
+	}
+
+	@Test
+	public void scriptMigrationIsRehearsed() {
+		rehearsal.rehearse(new V1__Script());
+		assertThat(rehearsal.getTimings()).hasSize(2);
+		assertThat(rehearsal.getTimings().get(1).getTables()).containsExactly("X");
+	}
+
+	@Test
+	public void rehearsingBatchCommandDoesNotConsumeRows() {
+		AtomicInteger supplied = new AtomicInteger();
+		BatchSqlCommand batch = BatchSqlCommand.from("INSERT INTO B (ID) VALUES (?)", () -> {
+			supplied.incrementAndGet();
+			return IntStream.rangeClosed(1, 3).mapToObj(id -> new Object[] { id });
+		}, 2);
+		rehearsal.rehearse("schema", Arrays.asList(SqlCommand.from("CREATE TABLE B (ID INT)")));
+		rehearsal.rehearse("batch", Arrays.asList(batch));
+		rehearsal.rehearse("batch", Arrays.asList(batch));
+		List<CommandTiming> timings = rehearsal.getTimings();
+		assertThat(timings).hasSize(3);
+		assertThat(timings.get(1).getUpdateCount()).isEqualTo(3);
+		assertThat(timings.get(2).getUpdateCount()).isEqualTo(3);
+		assertThat(timings.get(2).getLockLevel()).isEqualTo(MigrationRehearsal.LockLevel.ROW);
+		assertThat(supplied.get()).isEqualTo(2);
+	}
+
+	private static class OverridingCallback extends AbstractCallback {
+
+		OverridingCallback() {
+			super(Event.AFTER_MIGRATE);
+		}
+
+		@Override
+		public List<SqlCommand> getCommands(Event event, Context context) {
+			assertThat(context.getConnection()).isNotNull();
+			return Arrays.asList(SqlCommand.from("CREATE TABLE C (ID INT)"));
+		}
+	}
+
+	private static class V1__Script extends AbstractScriptMigration {
+
+		V1__Script() {
+			super(new ByteArrayResource(
+					"CREATE TABLE X (ID INT);\nINSERT INTO X (ID) VALUES (1);\n".getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+}
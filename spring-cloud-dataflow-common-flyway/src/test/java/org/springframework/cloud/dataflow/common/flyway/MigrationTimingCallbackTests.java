@@ -0,0 +1,205 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.flywaydb.core.api.MigrationVersion;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.dataflow.common.flyway.MigrationTimingCallback.MigrationTiming;
+import org.springframework.cloud.dataflow.common.flyway.MigrationTimingCallback.Report;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class MigrationTimingCallbackTests {
+
+	@Test
+	public void pairsPhaseEvents() {
+		RecordingCallback callback = new RecordingCallback();
+		Context context = mock(Context.class);
+		callback.handle(Event.BEFORE_VALIDATE, context);
+		callback.handle(Event.AFTER_VALIDATE, context);
+		callback.handle(Event.BEFORE_MIGRATE, context);
+		callback.handle(Event.AFTER_MIGRATE_ERROR, context);
+
+		Report report = callback.getReport();
+		assertThat(report.getPhases()).containsOnlyKeys("VALIDATE", "MIGRATE");
+		assertThat(callback.completed).containsExactly("VALIDATE true", "MIGRATE false");
+		assertThat(report.getMigrations()).isEmpty();
+	}
+
+	@Test
+	public void mergesRepeatedPhases() {
+		RecordingCallback callback = new RecordingCallback();
+		Context context = mock(Context.class);
+		callback.handle(Event.BEFORE_VALIDATE, context);
+		callback.handle(Event.AFTER_VALIDATE, context);
+		callback.handle(Event.BEFORE_VALIDATE, context);
+		callback.handle(Event.AFTER_VALIDATE_ERROR, context);
+
+		assertThat(callback.getReport().getPhases()).containsOnlyKeys("VALIDATE");
+		assertThat(callback.completed).containsExactly("VALIDATE true", "VALIDATE false");
+	}
+
+	@Test
+	public void ignoresUnpairedAfterEvents() {
+		RecordingCallback callback = new RecordingCallback();
+		Context context = mock(Context.class);
+		callback.handle(Event.AFTER_MIGRATE, context);
+		callback.handle(Event.AFTER_EACH_MIGRATE, context);
+
+		Report report = callback.getReport();
+		assertThat(report.getPhases()).isEmpty();
+		assertThat(report.getMigrations()).isEmpty();
+		assertThat(callback.completed).isEmpty();
+	}
+
+	@Test
+	public void pairsEachMigrateEventsWithMigration() {
+		RecordingCallback callback = new RecordingCallback();
+		Context first = context("1.1", "Add column");
+		Context second = context(null, "Repeatable");
+		callback.handle(Event.BEFORE_EACH_MIGRATE, first);
+		callback.handle(Event.AFTER_EACH_MIGRATE, first);
+		callback.handle(Event.BEFORE_EACH_MIGRATE, second);
+		callback.handle(Event.AFTER_EACH_MIGRATE_ERROR, second);
+
+		List<MigrationTiming> migrations = callback.getReport().getMigrations();
+		assertThat(migrations).extracting(MigrationTiming::getMigration).containsExactly("1.1 Add column",
+				"Repeatable");
+		assertThat(migrations).extracting(MigrationTiming::isSuccess).containsExactly(true, false);
+		assertThat(callback.completed).containsExactly("1.1 Add column true", "Repeatable false");
+		assertThat(callback.getReport().getPhases()).isEmpty();
+	}
+
+	@Test
+	public void namesMigrationWithoutInfoAsUnknown() {
+		RecordingCallback callback = new RecordingCallback();
+		Context context = mock(Context.class);
+		callback.handle(Event.BEFORE_EACH_MIGRATE, context);
+		callback.handle(Event.AFTER_EACH_MIGRATE, context);
+
+		assertThat(callback.getReport().getMigrations()).extracting(MigrationTiming::getMigration)
+				.containsExactly("unknown");
+	}
+
+	@Test
+	public void reportsSetupTimeFromMarkedStart() {
+		MigrationTimingCallback callback = new MigrationTimingCallback();
+		assertThat(callback.getReport().getSetup()).isEqualTo(Duration.ZERO);
+		callback.markStart();
+		callback.handle(Event.BEFORE_MIGRATE, mock(Context.class));
+
+		Report report = callback.getReport();
+		assertThat(report.getSetup()).isGreaterThanOrEqualTo(Duration.ZERO);
+		assertThat(report.getTotal()).isGreaterThanOrEqualTo(report.getSetup());
+	}
+
+	@Test
+	public void sumsCommandDurationsPerExecutionId() {
+		MigrationTimingCallback callback = new MigrationTimingCallback();
+		callback.executed(event("V1", 10));
+		callback.executed(event("V1", 5));
+		callback.executed(event("V2", 1));
+		callback.executed(event(null, 100));
+
+		assertThat(callback.getReport().getExecutions()).containsExactly(entry("V1", Duration.ofMillis(15)),
+				entry("V2", Duration.ofMillis(1)));
+	}
+
+	@Test
+	public void recordsFlywayMigration() {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true).build();
+		try {
+			SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+			MicrometerMigrationTimingCallback callback = new MicrometerMigrationTimingCallback(meterRegistry);
+			callback.markStart();
+			Flyway.configure().dataSource(database).callbacks(callback)
+					.javaMigrations(new V1__Create(), new V2__Insert()).load().migrate();
+
+			Report report = callback.getReport();
+			assertThat(report.getPhases()).containsKey("MIGRATE");
+			assertThat(report.getMigrations()).extracting(MigrationTiming::getMigration)
+					.containsExactly("1 Create", "2 Insert");
+			assertThat(meterRegistry.get(MicrometerMigrationTimingCallback.MIGRATION_TIMER).tag("name", "1 Create")
+					.tag("success", "true").timer().count()).isEqualTo(1);
+			assertThat(meterRegistry.get(MicrometerMigrationTimingCallback.PHASE_TIMER).tag("phase", "MIGRATE")
+					.timer().count()).isEqualTo(1);
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+	private static Context context(String version, String description) {
+		MigrationInfo info = mock(MigrationInfo.class);
+		when(info.getVersion()).thenReturn(version != null ? MigrationVersion.fromVersion(version) : null);
+		when(info.getDescription()).thenReturn(description);
+		Context context = mock(Context.class);
+		when(context.getMigrationInfo()).thenReturn(info);
+		return context;
+	}
+
+	private static SqlCommandEvent event(String executionId, long millis) {
+		return new SqlCommandEvent(executionId, SqlCommand.from("UPDATE T SET A = 1"), Duration.ofMillis(millis), 1,
+				null);
+	}
+
+	private static class RecordingCallback extends MigrationTimingCallback {
+
+		private final List<String> completed = new ArrayList<>();
+
+		@Override
+		protected void phaseCompleted(String phase, Duration duration, boolean success) {
+			completed.add(phase + " " + success);
+		}
+
+		@Override
+		protected void migrationCompleted(String migration, Duration duration, boolean success) {
+			completed.add(migration + " " + success);
+		}
+	}
+
+	private static class V1__Create extends AbstractMigration {
+
+		V1__Create() {
+			super(Arrays.asList(SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)")));
+		}
+	}
+
+	private static class V2__Insert extends AbstractMigration {
+
+		V2__Insert() {
+			super(Arrays.asList(SqlCommand.from("INSERT INTO T (ID) VALUES (1)")));
+		}
+	}
+}
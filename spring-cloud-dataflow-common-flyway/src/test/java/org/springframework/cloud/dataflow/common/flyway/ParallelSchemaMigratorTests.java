@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.dataflow.common.flyway.ParallelSchemaMigrator.ErrorPolicy;
+import org.springframework.cloud.dataflow.common.flyway.ParallelSchemaMigrator.Result;
+import org.springframework.cloud.dataflow.common.flyway.ParallelSchemaMigrator.Status;
+import org.springframework.cloud.dataflow.common.flyway.ParallelSchemaMigrator.Target;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class ParallelSchemaMigratorTests {
+
+	private final List<EmbeddedDatabase> databases = new ArrayList<>();
+
+	@BeforeEach
+	public void setup() {
+		for (int i = 0; i < 3; i++) {
+			databases.add(new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+					.build());
+		}
+		// makes a migration of a second target fail
+		new JdbcTemplate(databases.get(1)).execute("CREATE TABLE T (ID INT)");
+	}
+
+	@AfterEach
+	public void clean() {
+		for (EmbeddedDatabase database : databases) {
+			database.shutdown();
+		}
+	}
+
+	@Test
+	public void failedTargetDoesNotFailOthers() {
+		ParallelSchemaMigrator migrator = new ParallelSchemaMigrator(
+				Flyway.configure().javaMigrations(new V1__Create()), 2);
+		migrator.setErrorPolicy(ErrorPolicy.CONTINUE_ON_ERROR);
+		List<Result> progress = Collections.synchronizedList(new ArrayList<>());
+		migrator.setProgressListener(progress::add);
+		List<Result> results = migrator.migrate(targets());
+		assertThat(results).extracting(Result::getName).containsExactly("db0", "db1", "db2");
+		assertThat(results).extracting(Result::getStatus)
+				.containsExactly(Status.SUCCEEDED, Status.FAILED, Status.SUCCEEDED);
+		assertThat(results.get(0).getException()).isNull();
+		assertThat(results.get(1).getException()).isNotNull();
+		assertThat(progress).hasSize(3);
+		assertThat(new JdbcTemplate(databases.get(2)).queryForObject("SELECT COUNT(*) FROM T", Integer.class))
+				.isZero();
+	}
+
+	@Test
+	public void failFastSkipsTargetsNotStarted() {
+		ParallelSchemaMigrator migrator = new ParallelSchemaMigrator(
+				Flyway.configure().javaMigrations(new V1__Create()), 1);
+		List<Target> targets = targets();
+		List<Result> results = migrator.migrate(Arrays.asList(targets.get(1), targets.get(0), targets.get(2)));
+		assertThat(results).extracting(Result::getStatus)
+				.containsExactly(Status.FAILED, Status.SKIPPED, Status.SKIPPED);
+		assertThat(results.get(1).getDuration()).isEqualTo(Duration.ZERO);
+	}
+
+	@Test
+	public void perTargetFactoryCreatesConfigurationForEveryTarget() {
+		List<String> created = Collections.synchronizedList(new ArrayList<>());
+		ParallelSchemaMigrator migrator = ParallelSchemaMigrator.perTarget(target -> {
+			created.add(target.getName());
+			return Flyway.configure().javaMigrations(new V1__Create());
+		}, 3);
+		migrator.setErrorPolicy(ErrorPolicy.CONTINUE_ON_ERROR);
+		migrator.migrate(targets());
+		assertThat(created).containsExactlyInAnyOrder("db0", "db1", "db2");
+	}
+
+	private List<Target> targets() {
+		List<Target> targets = new ArrayList<>();
+		for (int i = 0; i < databases.size(); i++) {
+			targets.add(new Target("db" + i, databases.get(i), null));
+		}
+		return targets;
+	}
+
+	private static class V1__Create extends AbstractMigration {
+
+		V1__Create() {
+			super(Arrays.asList(SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)")));
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class PurgeSqlCommandTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE R (ID BIGINT PRIMARY KEY, END_TIME INT)");
+		jdbcTemplate.execute("CREATE TABLE C (ID BIGINT PRIMARY KEY, R_ID BIGINT REFERENCES R (ID))");
+		jdbcTemplate.execute("CREATE TABLE G (ID BIGINT PRIMARY KEY, C_ID BIGINT REFERENCES C (ID))");
+		jdbcTemplate.execute("CREATE TABLE ARCHIVE_R (ID BIGINT, END_TIME INT)");
+		jdbcTemplate.execute("CREATE TABLE ARCHIVE_C (ID BIGINT, R_ID BIGINT)");
+		jdbcTemplate.execute("CREATE TABLE ARCHIVE_G (ID BIGINT, C_ID BIGINT)");
+		for (long id = 1; id <= 25; id++) {
+			jdbcTemplate.update("INSERT INTO R (ID, END_TIME) VALUES (?, ?)", id, id);
+			jdbcTemplate.update("INSERT INTO C (ID, R_ID) VALUES (?, ?)", id, id);
+			jdbcTemplate.update("INSERT INTO G (ID, C_ID) VALUES (?, ?)", id, id);
+		}
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void purgesMatchingRowsWithDependentsInChunks() throws SQLException {
+		List<Long> chunks = new ArrayList<>();
+		try (Connection connection = database.getConnection()) {
+			command(10).handle(jdbcTemplate, connection, null, chunks::add);
+		}
+		assertThat(chunks).containsExactly(11L, 21L);
+		assertRemaining("R", 10, 16L);
+		assertRemaining("C", 10, 16L);
+		assertRemaining("G", 10, 16L);
+		assertThat(count("ARCHIVE_R")).isEqualTo(0);
+	}
+
+	@Test
+	public void stopsAtLastMatchingKey() throws SQLException {
+		List<Long> chunks = new ArrayList<>();
+		try (Connection connection = database.getConnection()) {
+			command(15).handle(jdbcTemplate, connection, null, chunks::add);
+		}
+		assertThat(chunks).containsExactly(16L);
+		assertRemaining("R", 10, 16L);
+	}
+
+	@Test
+	public void stopsAtMaxKeyValue() throws SQLException {
+		jdbcTemplate.update("INSERT INTO R (ID, END_TIME) VALUES (?, 1)", Long.MAX_VALUE - 1);
+		List<Long> chunks = new ArrayList<>();
+		try (Connection connection = database.getConnection()) {
+			new PurgeSqlCommand("R", "ID", "ID > 25", 10).handle(jdbcTemplate, connection, null, chunks::add);
+		}
+		assertThat(chunks).isEmpty();
+		assertThat(count("R")).isEqualTo(25);
+	}
+
+	@Test
+	public void doesNothingWithoutMatchingRows() throws SQLException {
+		List<Long> chunks = new ArrayList<>();
+		try (Connection connection = database.getConnection()) {
+			new PurgeSqlCommand("R", "ID", "END_TIME > 100", 10).handle(jdbcTemplate, connection, null,
+					chunks::add);
+		}
+		assertThat(chunks).isEmpty();
+		assertThat(count("R")).isEqualTo(25);
+	}
+
+	@Test
+	public void archivesRowsBeforeDeleting() throws SQLException {
+		PurgeSqlCommand command = command(10);
+		command.setArchivePrefix("ARCHIVE_");
+		try (Connection connection = database.getConnection()) {
+			command.handle(jdbcTemplate, connection);
+		}
+		assertThat(count("ARCHIVE_R")).isEqualTo(15);
+		assertThat(count("ARCHIVE_C")).isEqualTo(15);
+		assertThat(count("ARCHIVE_G")).isEqualTo(15);
+		assertRemaining("R", 10, 16L);
+	}
+
+	@Test
+	public void failedChunkIsRolledBackAndEarlierChunksKept() throws SQLException {
+		// an unregistered reference into a second chunk makes its delete fail
+		jdbcTemplate.execute("CREATE TABLE X (ID BIGINT PRIMARY KEY, C_ID BIGINT REFERENCES C (ID))");
+		jdbcTemplate.update("INSERT INTO X (ID, C_ID) VALUES (1, 12)");
+		try (Connection connection = database.getConnection()) {
+			JdbcTemplate template = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+			assertThatThrownBy(() -> command(10).handle(template, connection))
+					.isInstanceOf(DataIntegrityViolationException.class);
+			assertThat(connection.getAutoCommit()).isTrue();
+		}
+		assertRemaining("R", 15, 11L);
+		assertRemaining("G", 15, 11L);
+	}
+
+	private PurgeSqlCommand command(long chunkSize) {
+		return new PurgeSqlCommand("R", "ID", "END_TIME <= 15", chunkSize)
+				.addDependent("G", "C_ID", "C", "ID", "R_ID")
+				.addDependent("C", "R_ID");
+	}
+
+	private void assertRemaining(String table, int count, long min) {
+		assertThat(count(table)).isEqualTo(count);
+		assertThat(jdbcTemplate.queryForObject("SELECT MIN(ID) FROM " + table, Long.class)).isEqualTo(min);
+	}
+
+	private int count(String table) {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+	}
+}
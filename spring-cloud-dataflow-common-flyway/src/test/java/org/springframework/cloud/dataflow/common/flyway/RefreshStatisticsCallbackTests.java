@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.callback.Context;
+import org.flywaydb.core.api.callback.Event;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class RefreshStatisticsCallbackTests {
+
+	@Test
+	public void refreshCommandsPerDialect() {
+		RefreshStatisticsSqlCommand command = new RefreshStatisticsSqlCommand("task_execution");
+		assertThat(command.getRefreshCommand(SqlDialect.POSTGRESQL)).isEqualTo("ANALYZE task_execution");
+		assertThat(command.getRefreshCommand(SqlDialect.ORACLE)).isEqualTo(
+				"BEGIN DBMS_STATS.GATHER_TABLE_STATS(ownname => USER, tabname => 'TASK_EXECUTION'); END;");
+		assertThat(command.getRefreshCommand(SqlDialect.SQLSERVER)).isEqualTo("UPDATE STATISTICS task_execution");
+		assertThat(command.getRefreshCommand(SqlDialect.MYSQL)).isEqualTo("ANALYZE TABLE task_execution");
+		assertThat(command.getRefreshCommand(SqlDialect.MARIADB)).isEqualTo("ANALYZE TABLE task_execution");
+		assertThat(command.getRefreshCommand(SqlDialect.H2)).isEqualTo("ANALYZE TABLE task_execution");
+		assertThat(command.getRefreshCommand(SqlDialect.DB2)).isNull();
+		assertThat(command.getRefreshCommand(SqlDialect.UNKNOWN)).isNull();
+	}
+
+	@Test
+	public void changedTablesAreTrackedOnce() {
+		RefreshStatisticsCallback callback = new RefreshStatisticsCallback();
+		callback.executed(event("INSERT INTO T (ID) VALUES (1)", null));
+		callback.executed(event("UPDATE t SET ID = 2", null));
+		callback.executed(event("CREATE INDEX I ON S (ID)", 1061));
+		callback.executed(event("SELECT 1", null));
+		assertThat(callback.getCommands(Event.AFTER_MIGRATE, null))
+				.extracting(command -> ((RefreshStatisticsSqlCommand) command).getTableName())
+				.containsExactly("T");
+	}
+
+	@Test
+	public void refreshedTablesAreClearedAfterHandle() throws SQLException {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true).build();
+		try (Connection connection = database.getConnection()) {
+			connection.createStatement().execute("CREATE TABLE T (ID INT)");
+			RefreshStatisticsCallback callback = new RefreshStatisticsCallback();
+			callback.addTable("T");
+			Context context = FlywayContexts.callbackContext(Flyway.configure().dataSource(database), connection);
+			assertThat(callback.supports(Event.AFTER_MIGRATE, context)).isTrue();
+			callback.handle(Event.AFTER_MIGRATE, context);
+			assertThat(callback.getCommands(Event.AFTER_MIGRATE, context)).isEmpty();
+		}
+		finally {
+			database.shutdown();
+		}
+	}
+
+	private static SqlCommandEvent event(String command, Integer suppressedErrorCode) {
+		return new SqlCommandEvent("V1", SqlCommand.from(command), Duration.ofMillis(1), 1, suppressedErrorCode);
+	}
+}
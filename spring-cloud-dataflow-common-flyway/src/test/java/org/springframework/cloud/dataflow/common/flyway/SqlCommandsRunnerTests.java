@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class SqlCommandsRunnerTests {
+
+	private static final int MYSQL_DUPLICATE_KEY_NAME = 1061;
+	private static final int H2_DUPLICATE_KEY = 23505;
+	private Connection connection;
+	private Statement statement;
+	private EmbeddedDatabase database;
+
+	@BeforeEach
+	public void setup() throws SQLException {
+		connection = mock(Connection.class);
+		statement = mock(Statement.class);
+		DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+		when(metaData.getDatabaseProductName()).thenReturn("MySQL");
+		when(metaData.supportsSavepoints()).thenReturn(true);
+		when(connection.getMetaData()).thenReturn(metaData);
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(connection.createStatement()).thenReturn(statement);
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+	}
+
+	@AfterEach
+	public void cleanup() {
+		database.shutdown();
+	}
+
+	@Test
+	public void batchFallbackRerunsOnlyFailedCommandsWhenDriverContinuesAfterError() throws SQLException {
+		when(statement.executeBatch()).thenThrow(batchFailure(Statement.EXECUTE_FAILED, 0, 0));
+		when(statement.execute("CREATE INDEX IDX_A ON T (A)")).thenThrow(duplicateKeyName());
+
+		batchRunner().execute(connection, commands(0));
+
+		verify(statement, times(1)).execute("CREATE INDEX IDX_A ON T (A)");
+		verify(statement, never()).execute("CREATE INDEX IDX_B ON T (B)");
+		verify(statement, never()).execute("CREATE INDEX IDX_C ON T (C)");
+	}
+
+	@Test
+	public void batchFallbackRerunsFromFailedCommandWhenDriverStopsAtError() throws SQLException {
+		when(statement.executeBatch()).thenThrow(batchFailure(0));
+		when(statement.execute("CREATE INDEX IDX_B ON T (B)")).thenThrow(duplicateKeyName());
+
+		batchRunner().execute(connection, commands(1));
+
+		verify(statement, never()).execute("CREATE INDEX IDX_A ON T (A)");
+		verify(statement, times(1)).execute("CREATE INDEX IDX_B ON T (B)");
+		verify(statement, times(1)).execute("CREATE INDEX IDX_C ON T (C)");
+	}
+
+	@Test
+	public void batchFallbackRerunsAllCommandsWhenSavepointIsRolledBack() throws SQLException {
+		when(connection.getAutoCommit()).thenReturn(false);
+		when(connection.setSavepoint()).thenReturn(mock(Savepoint.class));
+		when(statement.executeBatch()).thenThrow(batchFailure(Statement.EXECUTE_FAILED, 0, 0));
+		when(statement.execute("CREATE INDEX IDX_A ON T (A)")).thenThrow(duplicateKeyName());
+
+		batchRunner().execute(connection, commands(0));
+
+		verify(connection).rollback(any(Savepoint.class));
+		verify(statement, times(1)).execute("CREATE INDEX IDX_A ON T (A)");
+		verify(statement, times(1)).execute("CREATE INDEX IDX_B ON T (B)");
+		verify(statement, times(1)).execute("CREATE INDEX IDX_C ON T (C)");
+	}
+
+	@Test
+	public void batchWithSuppressedErrorOnEmbeddedDatabase() throws SQLException {
+		List<SqlCommand> commands = Arrays.asList(
+				SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)"),
+				SqlCommand.from("INSERT INTO T (ID) VALUES (1)"),
+				SqlCommand.from("INSERT INTO T (ID) VALUES (1)", H2_DUPLICATE_KEY),
+				SqlCommand.from("INSERT INTO T (ID) VALUES (2)"));
+		try (Connection connection = database.getConnection()) {
+			batchRunner().execute(connection, commands);
+		}
+		List<Integer> ids = new JdbcTemplate(database).queryForList("SELECT ID FROM T ORDER BY ID", Integer.class);
+		assertThat(ids).containsExactly(1, 2);
+	}
+
+	@Test
+	public void suppressedErrorWithoutBatching() throws SQLException {
+		List<SqlCommand> commands = Arrays.asList(
+				SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)"),
+				SqlCommand.from("CREATE TABLE T (ID INT PRIMARY KEY)", 42101));
+		try (Connection connection = database.getConnection()) {
+			new SqlCommandsRunner().execute(connection, commands);
+		}
+		assertThat(new JdbcTemplate(database).queryForObject("SELECT COUNT(*) FROM T", Integer.class)).isZero();
+	}
+
+	private static SqlCommandsRunner batchRunner() {
+		SqlCommandsRunner runner = new SqlCommandsRunner();
+		runner.setBatchEnabled(true);
+		return runner;
+	}
+
+	private static List<SqlCommand> commands(int suppressingIndex) {
+		String[] sqls = { "CREATE INDEX IDX_A ON T (A)", "CREATE INDEX IDX_B ON T (B)",
+				"CREATE INDEX IDX_C ON T (C)" };
+		SqlCommand[] commands = new SqlCommand[sqls.length];
+		for (int i = 0; i < sqls.length; i++) {
+			commands[i] = i == suppressingIndex ? SqlCommand.from(sqls[i], MYSQL_DUPLICATE_KEY_NAME)
+					: SqlCommand.from(sqls[i]);
+		}
+		return Arrays.asList(commands);
+	}
+
+	private static BatchUpdateException batchFailure(int... counts) {
+		return new BatchUpdateException("Duplicate key name", "42000", MYSQL_DUPLICATE_KEY_NAME, counts, null);
+	}
+
+	private static SQLException duplicateKeyName() {
+		return new SQLException("Duplicate key name", "42000", MYSQL_DUPLICATE_KEY_NAME);
+	}
+}
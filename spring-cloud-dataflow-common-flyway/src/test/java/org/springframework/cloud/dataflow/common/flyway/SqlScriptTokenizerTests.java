@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlScriptTokenizerTests {
+
+	@Test
+	public void lineAndBlockCommentsAreSkipped() {
+		assertThat(tokenize(SqlDialect.UNKNOWN,
+				"-- comment ; here\nCREATE TABLE A (ID INT); /* block ; */\nINSERT INTO A VALUES (1);"))
+						.containsExactly("CREATE TABLE A (ID INT)", "INSERT INTO A VALUES (1)");
+	}
+
+	@Test
+	public void optimizerHintIsKept() {
+		assertThat(tokenize(SqlDialect.ORACLE, "SELECT /*+ INDEX(A) */ * FROM A;"))
+				.containsExactly("SELECT /*+ INDEX(A) */ * FROM A");
+	}
+
+	@Test
+	public void delimitersWithinQuotesAreKept() {
+		assertThat(tokenize(SqlDialect.UNKNOWN, "INSERT INTO A VALUES ('a;b', \"c;d\", 'it''s;');SELECT 1;"))
+				.containsExactly("INSERT INTO A VALUES ('a;b', \"c;d\", 'it''s;')", "SELECT 1");
+	}
+
+	@Test
+	public void emptyStatementsAreSkipped() {
+		assertThat(tokenize(SqlDialect.UNKNOWN, ";;SELECT 1;\n;")).containsExactly("SELECT 1");
+	}
+
+	@Test
+	public void postgresDollarQuotedBody() {
+		assertThat(tokenize(SqlDialect.POSTGRESQL,
+				"CREATE FUNCTION f() RETURNS int AS $$ BEGIN RETURN 1; END; $$ LANGUAGE plpgsql;\nSELECT 1;"))
+						.containsExactly(
+								"CREATE FUNCTION f() RETURNS int AS $$ BEGIN RETURN 1; END; $$ LANGUAGE plpgsql",
+								"SELECT 1");
+	}
+
+	@Test
+	public void postgresTaggedDollarQuotedBody() {
+		assertThat(tokenize(SqlDialect.POSTGRESQL, "DO $body$ BEGIN PERFORM 1; END $body$;\nSELECT $1;"))
+				.containsExactly("DO $body$ BEGIN PERFORM 1; END $body$", "SELECT $1");
+	}
+
+	@Test
+	public void oraclePlsqlBlockEndsWithSlashLine() {
+		assertThat(tokenize(SqlDialect.ORACLE,
+				"CREATE OR REPLACE PROCEDURE p AS\nBEGIN\n  NULL;\nEND;\n/\nSELECT 1 FROM DUAL;\n"))
+						.containsExactly("CREATE OR REPLACE PROCEDURE p AS\nBEGIN\n  NULL;\nEND;",
+								"SELECT 1 FROM DUAL");
+	}
+
+	@Test
+	public void mysqlDelimiterDirective() {
+		assertThat(tokenize(SqlDialect.MYSQL,
+				"DELIMITER $$\nCREATE PROCEDURE p()\nBEGIN\n  SELECT 1;\nEND$$\nDELIMITER ;\nSELECT 2;\n"))
+						.containsExactly("CREATE PROCEDURE p()\nBEGIN\n  SELECT 1;\nEND", "SELECT 2");
+	}
+
+	@Test
+	public void mysqlHashCommentsAndBackslashEscapes() {
+		assertThat(tokenize(SqlDialect.MYSQL, "INSERT INTO A VALUES ('a\\';b'); # trailing ; comment\n"))
+				.containsExactly("INSERT INTO A VALUES ('a\\';b')");
+	}
+
+	@Test
+	public void hashIsNotCommentWithoutMysql() {
+		assertThat(tokenize(SqlDialect.UNKNOWN, "SELECT '#' # 1;"))
+				.containsExactly("SELECT '#' # 1");
+	}
+
+	private static List<String> tokenize(SqlDialect dialect, String script) {
+		List<String> statements = new ArrayList<>();
+		SqlScriptTokenizer tokenizer = new SqlScriptTokenizer(new StringReader(script), dialect);
+		while (tokenizer.hasNext()) {
+			statements.add(tokenizer.next().getCommand());
+		}
+		return statements;
+	}
+}
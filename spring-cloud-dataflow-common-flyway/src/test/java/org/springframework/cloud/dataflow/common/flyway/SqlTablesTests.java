@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class SqlTablesTests {
+
+	@Test
+	public void updateStatement() {
+		assertThat(SqlTables.changedTables(SqlCommand.from("UPDATE TASK_EXECUTION SET EXIT_CODE = 0")))
+				.containsExactly("TASK_EXECUTION");
+		assertThat(SqlTables.changedTables(SqlCommand.from("-- comment\n/* block */ update \"T\" set A = 1")))
+				.containsExactly("T");
+	}
+
+	@Test
+	public void referentialActionsAreNotUpdates() {
+		assertThat(SqlTables.changedTables(SqlCommand.from("ALTER TABLE CHILD ADD CONSTRAINT FK_P FOREIGN KEY (P) "
+				+ "REFERENCES PARENT (ID) ON DELETE SET NULL ON UPDATE CASCADE"))).containsExactly("CHILD");
+		assertThat(SqlTables.changedTables(SqlCommand.from("CREATE TABLE CHILD (P BIGINT REFERENCES PARENT (ID) "
+				+ "ON UPDATE SET NULL)"))).containsExactly("CHILD");
+	}
+
+	@Test
+	public void lockingReadsAndUpsertsAreNotUpdates() {
+		assertThat(SqlTables.changedTables(SqlCommand.from("SELECT * FROM T WHERE ID = 1 FOR UPDATE"))).isEmpty();
+		assertThat(SqlTables.changedTables(
+				SqlCommand.from("INSERT INTO T (ID, A) VALUES (1, 1) ON DUPLICATE KEY UPDATE A = 2")))
+						.containsExactly("T");
+	}
+
+	@Test
+	public void indexStatement() {
+		assertThat(SqlTables.changedTables(SqlCommand.from("CREATE UNIQUE INDEX IX_A ON T (A)")))
+				.containsExactly("T");
+	}
+
+	@Test
+	public void schemaChangedTables() {
+		assertThat(SqlTables.schemaChangedTables(SqlCommand.from("UPDATE T SET A = 1"))).isEmpty();
+		assertThat(SqlTables.schemaChangedTables(SqlCommand.from("ALTER TABLE CHILD ADD CONSTRAINT FK_P "
+				+ "FOREIGN KEY (P) REFERENCES PARENT (ID) ON UPDATE CASCADE"))).containsExactly("CHILD");
+		assertThat(SqlTables.schemaChangedTables(SqlCommand.from("ALTER TABLE T RENAME TO U"))).isNull();
+		assertThat(SqlTables.schemaChangedTables(SqlCommand.from("CREATE VIEW V AS SELECT 1"))).isNull();
+	}
+}
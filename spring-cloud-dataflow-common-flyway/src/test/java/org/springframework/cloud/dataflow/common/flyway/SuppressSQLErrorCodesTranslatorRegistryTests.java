@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.cloud.dataflow.common.flyway;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class SuppressSQLErrorCodesTranslatorRegistryTests {
+
+	private static final int H2_TABLE_EXISTS = 42101;
+	private static final int H2_DUPLICATE_KEY = 23505;
+	private final SuppressSQLErrorCodesTranslatorRegistry registry = SuppressSQLErrorCodesTranslatorRegistry
+			.getInstance();
+	private EmbeddedDatabase database;
+
+	@BeforeEach
+	public void setup() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+	}
+
+	@AfterEach
+	public void clean() {
+		database.shutdown();
+	}
+
+	@Test
+	public void translatorIsSharedRegardlessOfCodeOrder() {
+		SuppressSQLErrorCodesTranslator translator = registry.getTranslator("H2",
+				Arrays.asList(H2_TABLE_EXISTS, H2_DUPLICATE_KEY));
+		assertThat(registry.getTranslator("H2", Arrays.asList(H2_DUPLICATE_KEY, H2_TABLE_EXISTS)))
+				.isSameAs(translator);
+		assertThat(registry.getTranslator("H2", Arrays.asList(H2_TABLE_EXISTS))).isNotSameAs(translator);
+		assertThat(registry.getTranslator("MySQL", Arrays.asList(H2_TABLE_EXISTS, H2_DUPLICATE_KEY)))
+				.isNotSameAs(translator);
+		assertThat(translator.isSuppressed(H2_DUPLICATE_KEY)).isTrue();
+		assertThat(translator.isSuppressed(1)).isFalse();
+	}
+
+	@Test
+	public void suppressedErrorOnEmbeddedDatabase() {
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.setExceptionTranslator(registry.getTranslator("H2", Arrays.asList(H2_TABLE_EXISTS)));
+		jdbcTemplate.execute("CREATE TABLE T (ID INT PRIMARY KEY)");
+		assertThatThrownBy(() -> jdbcTemplate.execute("CREATE TABLE T (ID INT PRIMARY KEY)"))
+				.isInstanceOf(SuppressDataAccessException.class);
+		jdbcTemplate.execute("INSERT INTO T (ID) VALUES (1)");
+		assertThatThrownBy(() -> jdbcTemplate.execute("INSERT INTO T (ID) VALUES (1)"))
+				.isInstanceOf(DataAccessException.class)
+				.isNotInstanceOf(SuppressDataAccessException.class);
+	}
+}
@@ -0,0 +1 @@
+CREATE TABLE S (ID INT PRIMARY KEY);